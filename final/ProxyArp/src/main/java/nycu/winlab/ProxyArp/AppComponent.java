@@ -29,8 +29,10 @@ import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.onosproject.core.ApplicationId;
 import org.onosproject.core.CoreService;
@@ -40,31 +42,33 @@ import org.onosproject.net.packet.PacketService;
 import org.onosproject.net.packet.PacketProcessor;
 import org.onosproject.net.packet.PacketContext;
 import org.onosproject.net.packet.InboundPacket;
-import org.onosproject.net.packet.OutboundPacket;
-import org.onosproject.net.packet.DefaultOutboundPacket;
 
 import org.onlab.packet.Ethernet;
 import org.onlab.packet.ICMP6;
 import org.onlab.packet.IPv6;
 import org.onlab.packet.MacAddress;
+import org.onlab.packet.IPacket;
 import org.onlab.packet.ndp.NeighborAdvertisement;
+import org.onlab.packet.ndp.NeighborSolicitation;
 import org.onlab.packet.ARP;
 import org.onlab.packet.Ip4Address;
-import org.onlab.packet.Ip4Prefix;
+import org.onlab.packet.IpAddress;
 import org.onlab.packet.Ip6Address;
 import org.onosproject.net.ConnectPoint;
 import org.onosproject.net.config.ConfigFactory;
 import org.onosproject.net.config.NetworkConfigEvent;
 import org.onosproject.net.config.NetworkConfigListener;
 import org.onosproject.net.config.NetworkConfigRegistry;
+import org.onosproject.net.Host;
+import org.onosproject.net.driver.DriverService;
 import org.onosproject.net.flow.DefaultTrafficSelector;
-import org.onosproject.net.flow.DefaultTrafficTreatment;
-import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.flow.FlowRuleService;
 import org.onosproject.net.flow.TrafficSelector;
 
-import java.nio.ByteBuffer;
-
+import org.onosproject.net.edge.EdgePortEvent;
+import org.onosproject.net.edge.EdgePortListener;
 import org.onosproject.net.edge.EdgePortService;
+import org.onosproject.net.host.HostService;
 
 /**
  * Proxy ARP component for ONOS.
@@ -97,28 +101,57 @@ public class AppComponent {
     @Reference(cardinality = ReferenceCardinality.MANDATORY)
     protected EdgePortService edgePortService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    protected FlowRuleService flowRuleService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    protected DriverService driverService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    protected HostService hostService;
+
     private ProxyArpProcessor processor = new ProxyArpProcessor();
+    private final InternalEdgePortListener edgePortListener = new InternalEdgePortListener();
 
     private ApplicationId appId;
     InfoConfig config = null;
     private Ip4Address vip4;
     private Ip6Address vip6;
     private MacAddress vmac;
-    private Map<Ip4Address, MacAddress> arpTable = new HashMap<>();
-    private Map<Ip6Address, MacAddress> ndpTable = new HashMap<>();
-    private Map<MacAddress, ConnectPoint> cpTable = new HashMap<>();
-    private Ip4Prefix taDomainIp4 = Ip4Prefix.valueOf("192.168.70.0/24");
+    // Shared by the packet workers
+    private final NeighborCache neighborCache = new NeighborCache();
+    private final NeighborCheckpointer checkpointer = new NeighborCheckpointer(neighborCache);
+    private final Set<IpAddress> staticNeighbors = new HashSet<>();
+    private boolean restored;
+    private final PendingRequests pendingRequests = new PendingRequests();
+    private final PacketDispatcher dispatcher = new PacketDispatcher();
+    private PacketEgress packetEgress;
+    private volatile EdgePorts edgePorts = EdgePorts.EMPTY;
+    private ArpResponder arpResponder;
+    private ArpFilter arpFilter;
+    private GatewayAnnouncer announcer;
 
     @Activate
     protected void activate() {
         // register your app
         appId = coreService.registerApplication("nycu.winlab.ProxyArp");
+        arpResponder = new ArpResponder(flowRuleService, driverService, appId);
+        arpFilter = new ArpFilter(flowRuleService, appId);
+        announcer = new GatewayAnnouncer(packetService, () -> edgePorts);
 
         // Register the configuration factory
         cfgService.addListener(cfgListener);
         cfgService.registerConfigFactory(factory);
 
+        checkpointer.start();
+        pendingRequests.start();
+        announcer.start();
+
         // add a packet processor to packetService
+        packetEgress = new PacketEgress(packetService);
+        edgePortService.addListener(edgePortListener);
+        refreshEdgePorts();
+        dispatcher.start();
         packetService.addProcessor(processor, PacketProcessor.director(2));
 
         // install a flowrule for packet-in
@@ -146,6 +179,15 @@ public class AppComponent {
         // remove your packet processor
         packetService.removeProcessor(processor);
         processor = null;
+        dispatcher.stop();
+        edgePortService.removeListener(edgePortListener);
+        edgePorts = EdgePorts.EMPTY;
+        arpResponder.clear();
+        arpFilter.clear();
+        checkpointer.stop();
+        announcer.stop();
+        neighborCache.clear();
+        pendingRequests.stop();
 
         // remove flowrule you installed for packet-in
         TrafficSelector.Builder arpselector = DefaultTrafficSelector.builder();
@@ -179,13 +221,61 @@ public class AppComponent {
             if (context.isHandled()) {
                 return;
             }
-            InboundPacket pkt = context.inPacket();
-            Ethernet ethPkt = pkt.parsed();
+            Ethernet ethPkt = context.inPacket().parsed();
 
             if (ethPkt == null) {
                 return;
             }
 
+            // Handled on a worker, a request and its reply share one
+            int flowKey;
+            if (ethPkt.getEtherType() == Ethernet.TYPE_ARP) {
+                ARP arpPacket = (ARP) ethPkt.getPayload();
+                if (arpFilter.blocks(arpPacket.getTargetProtocolAddress())) {
+                    // Blocked domain: consumed without an answer
+                    context.block();
+                    return;
+                }
+                flowKey = Arrays.hashCode(arpPacket.getSenderProtocolAddress())
+                        ^ Arrays.hashCode(arpPacket.getTargetProtocolAddress());
+            } else {
+                byte[] target = ndpTarget(ethPkt);
+                if (target == null) {
+                    // Other IPv6 traffic belongs to the router
+                    return;
+                }
+                flowKey = Arrays.hashCode(target);
+            }
+            context.block();
+            dispatcher.execute(flowKey, () -> handle(context));
+        }
+
+        /**
+         * Returns the target address of a neighbor solicitation or
+         * advertisement, null for any other packet.
+         */
+        private byte[] ndpTarget(Ethernet ethPkt) {
+            if (ethPkt.getEtherType() != Ethernet.TYPE_IPV6) {
+                return null;
+            }
+            IPacket icmp6 = ethPkt.getPayload().getPayload();
+            if (!(icmp6 instanceof ICMP6)) {
+                return null;
+            }
+            IPacket ndpPayload = icmp6.getPayload();
+            if (ndpPayload instanceof NeighborSolicitation) {
+                return ((NeighborSolicitation) ndpPayload).getTargetAddress();
+            }
+            if (ndpPayload instanceof NeighborAdvertisement) {
+                return ((NeighborAdvertisement) ndpPayload).getTargetAddress();
+            }
+            return null;
+        }
+
+        private void handle(PacketContext context) {
+            InboundPacket pkt = context.inPacket();
+            Ethernet ethPkt = pkt.parsed();
+
             // Check if the packet is an ARP packet
             if (ethPkt.getEtherType() == Ethernet.TYPE_ARP) {
                 ARP arpPacket = (ARP) ethPkt.getPayload();
@@ -197,19 +287,13 @@ public class AppComponent {
                 MacAddress dstMac = ethPkt.getDestinationMAC();
                 ConnectPoint inport = pkt.receivedFrom();
 
-                if (taDomainIp4.contains(dstIP) &&
-                        !dstIP.equals(Ip4Address.valueOf("192.168.70.80")) &&
-                        !dstIP.equals(Ip4Address.valueOf("192.168.70.253"))) {
-                    context.block();
-                    return;
-                }
-
                 // Learn the source IP/MAC mapping and where the packet came from
                 learnArpMapping(srcIP, srcMac, inport);
 
                 // Check if we know the target MAC address
-                MacAddress targetMac = arpTable.get(dstIP);
-                ConnectPoint outport = cpTable.get(targetMac);
+                NeighborCache.Neighbor target = neighborCache.lookup(dstIP);
+                MacAddress targetMac = target != null ? target.mac() : null;
+                ConnectPoint outport = target != null ? target.location() : null;
 
                 // Handle ARP requests
                 if (arpPacket.getOpCode() == ARP.OP_REQUEST) {
@@ -218,15 +302,24 @@ public class AppComponent {
                         // log.info("TABLE HIT. Requested MAC = {}", targetMac.toString());
                         Ethernet ethArpReply = ARP.buildArpReply(dstIP, targetMac, ethPkt);
                         packetOut(ethArpReply, inport);
-                    } else {
+                    } else if (pendingRequests.request(dstIP, ethPkt, inport, now())) {
                         // If target MAC is unknown, flood the ARP request to all edge ports
+                        // once per interval, retries wait for the same answer
                         // log.info("TABLE MISS. Send request to edge ports");
                         flood(ethPkt, inport);
                     }
                     // Handle ARP replies
                 } else if (arpPacket.getOpCode() == ARP.OP_REPLY) {
                     // log.info("RECV ARP REPLY. Requested MAC = {}", srcMac.toString());
-                    packetOut(ethPkt, outport); // Forward ARP reply to the request sender
+                    if (outport != null) {
+                        packetOut(ethPkt, outport); // Forward ARP reply to the request sender
+                    }
+                    // Answer everyone else who asked while the flood was out
+                    for (PendingRequests.Requester waiting : pendingRequests.resolve(srcIP)) {
+                        if (!waiting.mac().equals(dstMac)) {
+                            packetOut(ARP.buildArpReply(srcIP, srcMac, waiting.request()), waiting.location());
+                        }
+                    }
                 }
             } else if (ethPkt.getEtherType() == Ethernet.TYPE_IPV6) {
                 IPv6 ipv6Packet = (IPv6) ethPkt.getPayload();
@@ -234,30 +327,35 @@ public class AppComponent {
                 MacAddress srcMac = ethPkt.getSourceMAC();
                 Ip6Address srcIP = Ip6Address.valueOf(ipv6Packet.getSourceAddress());
                 Ip6Address dstIP = Ip6Address.valueOf(ipv6Packet.getDestinationAddress());
+                // Solicitations go to a multicast group, the address asked for is the target
+                Ip6Address targetIP = Ip6Address.valueOf(ndpTarget(ethPkt));
+                MacAddress dstMac = ethPkt.getDestinationMAC();
 
                 learnNdpMapping(srcIP, srcMac, pkt.receivedFrom());
 
-                MacAddress targetMac = ndpTable.get(dstIP);
-                ConnectPoint outport = cpTable.get(targetMac);
-
                 if (ndpPkt.getIcmpType() == ICMP6.NEIGHBOR_SOLICITATION) { // request
                     // log.info("RECV NDP. Requested MAC = {}", srcMac.toString());
+                    NeighborCache.Neighbor target = neighborCache.lookup(targetIP);
 
-                    if (targetMac != null) {
+                    if (target != null) {
                         // log.info("TABLE HIT. Requested MAC = {}", targetMac.toString());
-                        Ethernet ethNdpReply = NeighborAdvertisement.buildNdpAdv(dstIP, targetMac, ethPkt);
-                        IPv6 ipv6 = (IPv6) ethNdpReply.getPayload();
-                        ipv6.setHopLimit((byte) 255);
-                        ethNdpReply.setPayload(ipv6);
-                        packetOut(ethNdpReply, pkt.receivedFrom());
-                    } else {
+                        packetOut(buildNdpReply(targetIP, target.mac(), ethPkt), pkt.receivedFrom());
+                    } else if (pendingRequests.request(targetIP, ethPkt, pkt.receivedFrom(), now())) {
                         // log.info("TABLE MISS. Send request to edge ports");
                         flood(ethPkt, pkt.receivedFrom());
                     }
 
                 } else if (ndpPkt.getIcmpType() == ICMP6.NEIGHBOR_ADVERTISEMENT) { // reply
                     // log.info("RECV NDP REPLY. Requested MAC = {}", srcMac.toString());
-                    packetOut(ethPkt, outport);
+                    NeighborCache.Neighbor requester = neighborCache.lookup(dstIP);
+                    if (requester != null && requester.location() != null) {
+                        packetOut(ethPkt, requester.location());
+                    }
+                    for (PendingRequests.Requester waiting : pendingRequests.resolve(targetIP)) {
+                        if (!waiting.mac().equals(dstMac)) {
+                            packetOut(buildNdpReply(targetIP, srcMac, waiting.request()), waiting.location());
+                        }
+                    }
                 }
 
                 // Get source and destination IP/MAC addresses
@@ -274,50 +372,141 @@ public class AppComponent {
                 config = cfgService.getConfig(appId, InfoConfig.class);
                 if (config != null) {
                     log.info("ProxyARP Config Loaded");
+                    neighborCache.configure(config.neighborCacheSize(), config.neighborTtl() * 1000L);
+                    pendingRequests.configure(config.floodIntervalMs());
+                    if (vip4 != null) {
+                        neighborCache.remove(vip4);
+                        neighborCache.remove(vip6);
+                    }
                     vip4 = Ip4Address.valueOf(config.vip4());
                     vip6 = Ip6Address.valueOf(config.vip6());
                     vmac = MacAddress.valueOf(config.vmac());
-                    arpTable.put(vip4, vmac);
-                    ndpTable.put(vip6, vmac);
+                    neighborCache.putStatic(vip4, vmac, null);
+                    neighborCache.putStatic(vip6, vmac, null);
+                    try {
+                        loadStaticNeighbors(config.staticNeighbors());
+                    } catch (IllegalArgumentException e) {
+                        log.error("Invalid static neighbors: {}", e.getMessage());
+                    }
+                    checkpointer.configure(config.checkpointFile(), config.checkpointInterval() * 1000L);
+                    if (!restored) {
+                        // Start from what was known before a restart and from the
+                        // hosts ONOS already knows instead of flooding for them
+                        restored = true;
+                        log.info("Restored {} neighbors", checkpointer.restore());
+                        seedFromHosts();
+                    }
+                    arpResponder.configure(config.arpResponder(), vip4, vmac, edgePorts);
+                    announcer.configure(vip4, vip6, vmac, config.announceInterval() * 1000L);
+                    try {
+                        arpFilter.configure(config.blockedDomains(), config.blockedExceptions(),
+                                config.dropBlocked(), edgePorts);
+                    } catch (IllegalArgumentException e) {
+                        log.error("Invalid blocked domains, keeping the previous ones: {}", e.getMessage());
+                    }
                 }
             }
         }
     }
 
     /**
-     * Learn the mapping between an IP address and its corresponding MAC address,
-     * and map the MAC address to the ConnectPoint where the packet was received.
+     * Learn every address of the hosts known to the host service.
+     */
+    private void seedFromHosts() {
+        int seeded = 0;
+        for (Host host : hostService.getHosts()) {
+            ConnectPoint location = new ConnectPoint(host.location().deviceId(), host.location().port());
+            for (IpAddress ip : host.ipAddresses()) {
+                if (!ip.isZero()) {
+                    neighborCache.learn(ip, host.mac(), location);
+                    seeded++;
+                }
+            }
+        }
+        log.info("Seeded {} neighbors from the host service", seeded);
+    }
+
+    /**
+     * Replace the static neighbors with the configured "ip, mac[, connect point]" entries.
+     */
+    private void loadStaticNeighbors(List<String> entries) {
+        for (IpAddress ip : staticNeighbors) {
+            neighborCache.remove(ip);
+        }
+        staticNeighbors.clear();
+        for (String entry : entries) {
+            String[] fields = entry.split(",");
+            if (fields.length < 2 || fields.length > 3) {
+                throw new IllegalArgumentException("Malformed static neighbor " + entry);
+            }
+            IpAddress ip = IpAddress.valueOf(fields[0].trim());
+            ConnectPoint location = fields.length == 3 ? ConnectPoint.deviceConnectPoint(fields[2].trim()) : null;
+            neighborCache.putStatic(ip, MacAddress.valueOf(fields[1].trim()), location);
+            staticNeighbors.add(ip);
+        }
+    }
+
+    private class InternalEdgePortListener implements EdgePortListener {
+        @Override
+        public void event(EdgePortEvent event) {
+            refreshEdgePorts();
+        }
+    }
+
+    /**
+     * Take a new snapshot of the edge ports. Synchronized so a snapshot
+     * taken earlier never overwrites a later one.
+     */
+    private synchronized void refreshEdgePorts() {
+        edgePorts = EdgePorts.of(edgePortService.getEdgePoints());
+        arpResponder.sync(edgePorts);
+        arpFilter.sync(edgePorts);
+    }
+
+    /**
+     * Learn the mapping between an IP address, its MAC address and the
+     * ConnectPoint where the packet was received, refreshing it if known.
      */
     private void learnArpMapping(Ip4Address srcIP, MacAddress srcMac, ConnectPoint inport) {
-        arpTable.putIfAbsent(srcIP, srcMac);
-        cpTable.putIfAbsent(srcMac, inport);
+        // ARP probes have no sender address yet
+        if (!srcIP.isZero()) {
+            neighborCache.learn(srcIP, srcMac, inport);
+        }
     }
 
     private void learnNdpMapping(Ip6Address srcIP, MacAddress srcMac, ConnectPoint inport) {
-        ndpTable.putIfAbsent(srcIP, srcMac);
-        cpTable.putIfAbsent(srcMac, inport);
+        // Duplicate address detection is sent from the unspecified address
+        if (!srcIP.isZero()) {
+            neighborCache.learn(srcIP, srcMac, inport);
+        }
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    /**
+     * Build a neighbor advertisement answering the given solicitation.
+     */
+    private static Ethernet buildNdpReply(Ip6Address targetIP, MacAddress targetMac, Ethernet request) {
+        Ethernet ethNdpReply = NeighborAdvertisement.buildNdpAdv(targetIP, targetMac, request);
+        IPv6 ipv6 = (IPv6) ethNdpReply.getPayload();
+        ipv6.setHopLimit((byte) 255);
+        ethNdpReply.setPayload(ipv6);
+        return ethNdpReply;
     }
 
     /**
      * Flood the ARP request to all edge ports except the one it came from.
      */
     private void flood(Ethernet ethPkt, ConnectPoint inport) {
-        for (ConnectPoint cp : edgePortService.getEdgePoints()) {
-            if (!cp.equals(inport)) {
-                packetOut(ethPkt, cp);
-            }
-        }
+        packetEgress.flood(ethPkt, edgePorts, inport);
     }
 
     /**
      * Send a packet out to a specific ConnectPoint.
      */
     private void packetOut(Ethernet ethPkt, ConnectPoint cp) {
-        TrafficTreatment treatment = DefaultTrafficTreatment.builder()
-                .setOutput(cp.port())
-                .build();
-        OutboundPacket outPacket = new DefaultOutboundPacket(
-                cp.deviceId(), treatment, ByteBuffer.wrap(ethPkt.serialize()));
-        packetService.emit(outPacket);
+        packetEgress.emit(ethPkt, cp);
     }
 }
\ No newline at end of file
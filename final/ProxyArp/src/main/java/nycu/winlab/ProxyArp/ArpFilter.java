@@ -0,0 +1,202 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.ProxyArp;
+
+import org.onlab.packet.ARP;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.Ip4Prefix;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ARP requests the proxy must leave alone, by target address.
+ *
+ * Targets inside a blocked domain are ignored unless listed as an
+ * exception. Domains are compiled to network/mask pairs and exceptions
+ * to a sorted array, so checking a packet is a few integer compares on
+ * the raw target bytes. Optionally every edge switch also drops these
+ * requests so they never reach the controller. OpenFlow rules can only
+ * match exact ARP target addresses here, so that is done for domains of
+ * at most {@value #MAX_DROP_ADDRESSES} addresses.
+ */
+public class ArpFilter {
+
+    static final int MAX_DROP_ADDRESSES = 256;
+
+    private final Logger log = LoggerFactory.getLogger("ProxyArp");
+
+    private final FlowRuleService flowRuleService;
+    private final ApplicationId appId;
+
+    // Swapped as a whole, read without locking by the packet processor
+    private volatile Matcher matcher = new Matcher(new int[0], new int[0], new int[0]);
+
+    private final Map<DeviceId, List<FlowRule>> installed = new HashMap<>();
+    private List<Ip4Address> dropTargets = new ArrayList<>();
+
+    public ArpFilter(FlowRuleService flowRuleService, ApplicationId appId) {
+        this.flowRuleService = flowRuleService;
+        this.appId = appId;
+    }
+
+    /**
+     * Replaces the blocked domains and their exceptions.
+     *
+     * @param dropRules whether edge switches drop blocked requests too
+     */
+    public synchronized void configure(List<Ip4Prefix> domains, List<Ip4Address> exceptions,
+            boolean dropRules, EdgePorts edgePorts) {
+        int[] networks = new int[domains.size()];
+        int[] masks = new int[domains.size()];
+        for (int i = 0; i < domains.size(); i++) {
+            masks[i] = domains.get(i).prefixLength() == 0 ? 0 : -1 << (32 - domains.get(i).prefixLength());
+            networks[i] = domains.get(i).address().toInt() & masks[i];
+        }
+        int[] allowed = new int[exceptions.size()];
+        for (int i = 0; i < exceptions.size(); i++) {
+            allowed[i] = exceptions.get(i).toInt();
+        }
+        Arrays.sort(allowed);
+        Matcher next = new Matcher(networks, masks, allowed);
+        matcher = next;
+
+        List<Ip4Address> targets = new ArrayList<>();
+        if (dropRules) {
+            for (Ip4Prefix domain : domains) {
+                if (1L << (32 - domain.prefixLength()) > MAX_DROP_ADDRESSES) {
+                    log.warn("Blocked domain {} is too large for drop rules, filtered on the controller", domain);
+                    continue;
+                }
+                int network = domain.address().toInt();
+                int size = 1 << (32 - domain.prefixLength());
+                for (int i = 0; i < size; i++) {
+                    if (next.blocks(network + i)) {
+                        targets.add(Ip4Address.valueOf(network + i));
+                    }
+                }
+            }
+        }
+        if (!targets.equals(dropTargets)) {
+            clear();
+            dropTargets = targets;
+            sync(edgePorts);
+        }
+    }
+
+    /**
+     * Returns whether requests for the given ARP target address are blocked.
+     */
+    public boolean blocks(byte[] target) {
+        int address = (target[0] & 0xff) << 24 | (target[1] & 0xff) << 16
+                | (target[2] & 0xff) << 8 | target[3] & 0xff;
+        return matcher.blocks(address);
+    }
+
+    /**
+     * Installs the drop rules on edge switches that do not have them yet
+     * and withdraws them from switches that are no longer at the edge.
+     */
+    public synchronized void sync(EdgePorts edgePorts) {
+        if (dropTargets.isEmpty()) {
+            return;
+        }
+        Set<DeviceId> edge = new HashSet<>();
+        for (int i = 0; i < edgePorts.deviceCount(); i++) {
+            DeviceId device = edgePorts.device(i);
+            edge.add(device);
+            if (!installed.containsKey(device)) {
+                List<FlowRule> rules = buildRules(device);
+                flowRuleService.applyFlowRules(rules.toArray(new FlowRule[0]));
+                installed.put(device, rules);
+            }
+        }
+        Iterator<Map.Entry<DeviceId, List<FlowRule>>> it = installed.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<DeviceId, List<FlowRule>> entry = it.next();
+            if (!edge.contains(entry.getKey())) {
+                flowRuleService.removeFlowRules(entry.getValue().toArray(new FlowRule[0]));
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Withdraws all drop rules.
+     */
+    public synchronized void clear() {
+        for (List<FlowRule> rules : installed.values()) {
+            flowRuleService.removeFlowRules(rules.toArray(new FlowRule[0]));
+        }
+        installed.clear();
+    }
+
+    private List<FlowRule> buildRules(DeviceId device) {
+        List<FlowRule> rules = new ArrayList<>(dropTargets.size());
+        for (Ip4Address target : dropTargets) {
+            rules.add(DefaultFlowRule.builder()
+                    .forDevice(device)
+                    .withSelector(DefaultTrafficSelector.builder()
+                            .matchEthType(Ethernet.TYPE_ARP)
+                            .matchArpOp(ARP.OP_REQUEST)
+                            .matchArpTpa(target)
+                            .build())
+                    .withTreatment(DefaultTrafficTreatment.builder().drop().build())
+                    .withPriority(ArpResponder.PRIORITY)
+                    .fromApp(appId)
+                    .makePermanent()
+                    .build());
+        }
+        return rules;
+    }
+
+    private static final class Matcher {
+        private final int[] networks;
+        private final int[] masks;
+        private final int[] exceptions;
+
+        Matcher(int[] networks, int[] masks, int[] exceptions) {
+            this.networks = networks;
+            this.masks = masks;
+            this.exceptions = exceptions;
+        }
+
+        boolean blocks(int address) {
+            for (int i = 0; i < networks.length; i++) {
+                if ((address & masks[i]) == networks[i]) {
+                    return Arrays.binarySearch(exceptions, address) < 0;
+                }
+            }
+            return false;
+        }
+    }
+}
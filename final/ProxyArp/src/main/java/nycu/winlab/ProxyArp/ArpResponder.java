@@ -0,0 +1,178 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.ProxyArp;
+
+import org.onlab.packet.ARP;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.MacAddress;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.behaviour.ExtensionTreatmentResolver;
+import org.onosproject.net.driver.DriverHandler;
+import org.onosproject.net.driver.DriverService;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleService;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.flow.instructions.ExtensionTreatmentType.ExtensionTreatmentTypes;
+import org.onosproject.net.packet.PacketPriority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Answers ARP requests for the virtual gateway on the switches.
+ *
+ * Each edge switch gets one rule matching requests for the gateway
+ * address. It turns the request into a reply in place: the sender fields
+ * are moved to the target fields, the gateway is written as the sender
+ * and the frame leaves through the port it came in on. Moving a field to
+ * another takes the Nicira move actions, so switches whose driver cannot
+ * resolve them keep sending the requests to the controller. Neighbor
+ * solicitations stay on the controller as well, an advertisement needs
+ * a new ICMPv6 checksum which set-field actions cannot compute.
+ */
+public class ArpResponder {
+
+    // Above every packet-in request for ARP, or the switch would still punt
+    static final int PRIORITY = PacketPriority.CONTROL.priorityValue() + 1;
+
+    private final Logger log = LoggerFactory.getLogger("ProxyArp");
+
+    private final FlowRuleService flowRuleService;
+    private final DriverService driverService;
+    private final ApplicationId appId;
+
+    private final Map<DeviceId, FlowRule> installed = new HashMap<>();
+    private boolean enabled;
+    private Ip4Address vip;
+    private MacAddress vmac;
+
+    public ArpResponder(FlowRuleService flowRuleService, DriverService driverService, ApplicationId appId) {
+        this.flowRuleService = flowRuleService;
+        this.driverService = driverService;
+        this.appId = appId;
+    }
+
+    /**
+     * Turns the responder on or off and sets the gateway it answers for.
+     * Rules of a previous gateway are withdrawn.
+     */
+    public synchronized void configure(boolean enabled, Ip4Address vip, MacAddress vmac, EdgePorts edgePorts) {
+        if (this.enabled == enabled && Objects.equals(this.vip, vip) && Objects.equals(this.vmac, vmac)) {
+            return;
+        }
+        clear();
+        this.enabled = enabled;
+        this.vip = vip;
+        this.vmac = vmac;
+        sync(edgePorts);
+    }
+
+    /**
+     * Installs the responder on edge switches that do not have it yet and
+     * withdraws it from switches that are no longer at the edge.
+     */
+    public synchronized void sync(EdgePorts edgePorts) {
+        if (!enabled || vip == null) {
+            return;
+        }
+        Set<DeviceId> edge = new HashSet<>();
+        for (int i = 0; i < edgePorts.deviceCount(); i++) {
+            DeviceId device = edgePorts.device(i);
+            edge.add(device);
+            if (!installed.containsKey(device)) {
+                FlowRule rule = buildRule(device);
+                if (rule != null) {
+                    flowRuleService.applyFlowRules(rule);
+                    installed.put(device, rule);
+                }
+            }
+        }
+        Iterator<Map.Entry<DeviceId, FlowRule>> it = installed.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<DeviceId, FlowRule> entry = it.next();
+            if (!edge.contains(entry.getKey())) {
+                flowRuleService.removeFlowRules(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Withdraws all responder rules.
+     */
+    public synchronized void clear() {
+        if (!installed.isEmpty()) {
+            flowRuleService.removeFlowRules(installed.values().toArray(new FlowRule[0]));
+            installed.clear();
+        }
+    }
+
+    private FlowRule buildRule(DeviceId device) {
+        ExtensionTreatmentResolver resolver;
+        try {
+            DriverHandler handler = driverService.createHandler(device);
+            if (!handler.driver().hasBehaviour(ExtensionTreatmentResolver.class)) {
+                log.debug("{} cannot move fields, gateway ARP stays on the controller", device);
+                return null;
+            }
+            resolver = handler.behaviour(ExtensionTreatmentResolver.class);
+        } catch (RuntimeException e) {
+            log.debug("No driver for {}: {}", device, e.getMessage());
+            return null;
+        }
+
+        TrafficSelector selector = DefaultTrafficSelector.builder()
+                .matchEthType(Ethernet.TYPE_ARP)
+                .matchArpOp(ARP.OP_REQUEST)
+                .matchArpTpa(vip)
+                .build();
+        TrafficTreatment treatment = DefaultTrafficTreatment.builder()
+                .extension(resolver.getExtensionInstruction(
+                        ExtensionTreatmentTypes.NICIRA_MOV_ETH_SRC_TO_DST.type()), device)
+                .setEthSrc(vmac)
+                .setArpOp(ARP.OP_REPLY)
+                .extension(resolver.getExtensionInstruction(
+                        ExtensionTreatmentTypes.NICIRA_MOV_ARP_SHA_TO_THA.type()), device)
+                .setArpSha(vmac)
+                .extension(resolver.getExtensionInstruction(
+                        ExtensionTreatmentTypes.NICIRA_MOV_ARP_SPA_TO_TPA.type()), device)
+                .setArpSpa(vip)
+                .setOutput(PortNumber.IN_PORT)
+                .build();
+
+        return DefaultFlowRule.builder()
+                .forDevice(device)
+                .withSelector(selector)
+                .withTreatment(treatment)
+                .withPriority(PRIORITY)
+                .fromApp(appId)
+                .makePermanent()
+                .build();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.ProxyArp;
+
+import static org.onlab.util.Tools.groupedThreads;
+
+import org.onlab.packet.ARP;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.ICMP6;
+import org.onlab.packet.IPv6;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.Ip6Address;
+import org.onlab.packet.MacAddress;
+import org.onlab.packet.ndp.NeighborAdvertisement;
+import org.onlab.packet.ndp.NeighborDiscoveryOptions;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.packet.DefaultOutboundPacket;
+import org.onosproject.net.packet.PacketService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Keeps host caches of the virtual gateway warm.
+ *
+ * A gratuitous ARP and an unsolicited neighbor advertisement for the
+ * gateway are serialized once per configuration and sent out of every
+ * edge port once per interval. The interval is cut into slots and each
+ * port is hashed to one of them, so the announcements are spread over
+ * the interval instead of hitting every host at the same moment.
+ */
+public class GatewayAnnouncer {
+
+    // Announcements are off unless an interval is configured
+    public static final long DEFAULT_INTERVAL_MS = 0;
+
+    private static final int SLOTS = 16;
+    private static final MacAddress ALL_NODES_MAC = MacAddress.valueOf("33:33:00:00:00:01");
+    private static final Ip6Address ALL_NODES = Ip6Address.valueOf("ff02::1");
+
+    private final Logger log = LoggerFactory.getLogger("ProxyArp");
+    private final PacketService packetService;
+    private final Supplier<EdgePorts> edgePorts;
+    // Differs per start, so several controllers do not pick the same slots
+    private final int salt = ThreadLocalRandom.current().nextInt();
+
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> task;
+    private long intervalMs = DEFAULT_INTERVAL_MS;
+    private volatile byte[] garp;
+    private volatile byte[] unsolicitedNa;
+    private int slot;
+
+    public GatewayAnnouncer(PacketService packetService, Supplier<EdgePorts> edgePorts) {
+        this.packetService = packetService;
+        this.edgePorts = edgePorts;
+    }
+
+    public synchronized void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(
+                groupedThreads("proxyarp", "gateway-announce-%d", log));
+        schedule();
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+            task = null;
+        }
+    }
+
+    /**
+     * Sets the gateway to announce and how often, an interval of 0 turns
+     * the announcements off.
+     */
+    public synchronized void configure(Ip4Address vip4, Ip6Address vip6, MacAddress vmac, long intervalMs) {
+        garp = buildGarp(vip4, vmac);
+        unsolicitedNa = buildUnsolicitedNa(vip6, vmac);
+        if (this.intervalMs != intervalMs) {
+            this.intervalMs = intervalMs;
+            if (task != null) {
+                task.cancel(false);
+                task = null;
+            }
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (executor != null && intervalMs > 0) {
+            long tickMs = Math.max(1, intervalMs / SLOTS);
+            task = executor.scheduleAtFixedRate(this::announceSlot, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void announceSlot() {
+        int current = slot;
+        slot = (current + 1) % SLOTS;
+        byte[] arp = garp;
+        byte[] na = unsolicitedNa;
+        if (arp == null) {
+            return;
+        }
+
+        Map<DeviceId, TrafficTreatment.Builder> outputs = new LinkedHashMap<>();
+        for (ConnectPoint point : edgePorts.get().points()) {
+            if (Math.floorMod(point.hashCode() ^ salt, SLOTS) == current) {
+                outputs.computeIfAbsent(point.deviceId(), id -> DefaultTrafficTreatment.builder())
+                        .setOutput(point.port());
+            }
+        }
+        for (Map.Entry<DeviceId, TrafficTreatment.Builder> entry : outputs.entrySet()) {
+            TrafficTreatment treatment = entry.getValue().build();
+            packetService.emit(new DefaultOutboundPacket(entry.getKey(), treatment, ByteBuffer.wrap(arp)));
+            packetService.emit(new DefaultOutboundPacket(entry.getKey(), treatment, ByteBuffer.wrap(na)));
+        }
+    }
+
+    // Announcement as described in RFC 5227, sender and target are the gateway
+    private static byte[] buildGarp(Ip4Address vip4, MacAddress vmac) {
+        ARP arp = new ARP();
+        arp.setHardwareType(ARP.HW_TYPE_ETHERNET)
+                .setProtocolType(ARP.PROTO_TYPE_IP)
+                .setHardwareAddressLength((byte) Ethernet.DATALAYER_ADDRESS_LENGTH)
+                .setProtocolAddressLength((byte) 4)
+                .setOpCode(ARP.OP_REQUEST)
+                .setSenderHardwareAddress(vmac.toBytes())
+                .setSenderProtocolAddress(vip4.toInt())
+                .setTargetHardwareAddress(MacAddress.ZERO.toBytes())
+                .setTargetProtocolAddress(vip4.toInt());
+
+        Ethernet ethPkt = new Ethernet();
+        ethPkt.setEtherType(Ethernet.TYPE_ARP)
+                .setSourceMACAddress(vmac)
+                .setDestinationMACAddress(MacAddress.BROADCAST)
+                .setPayload(arp);
+        return ethPkt.serialize();
+    }
+
+    // Unsolicited advertisement to all nodes with the override flag set, RFC 4861 7.2.6
+    private static byte[] buildUnsolicitedNa(Ip6Address vip6, MacAddress vmac) {
+        NeighborAdvertisement na = new NeighborAdvertisement()
+                .setRouterFlag((byte) 1)
+                .setSolicitedFlag((byte) 0)
+                .setOverrideFlag((byte) 1)
+                .setTargetAddress(vip6.toOctets())
+                .addOption(NeighborDiscoveryOptions.TYPE_TARGET_LL_ADDRESS, vmac.toBytes());
+
+        Ethernet ethPkt = new Ethernet();
+        ethPkt.setEtherType(Ethernet.TYPE_IPV6);
+        ethPkt.setDestinationMACAddress(ALL_NODES_MAC);
+        ethPkt.setSourceMACAddress(vmac);
+        ethPkt.setPayload(new IPv6()
+                .setDestinationAddress(ALL_NODES.toOctets())
+                .setSourceAddress(vip6.toOctets())
+                .setNextHeader(IPv6.PROTOCOL_ICMP6)
+                .setHopLimit((byte) 255)
+                .setPayload(new ICMP6()
+                        .setIcmpType(ICMP6.NEIGHBOR_ADVERTISEMENT)
+                        .setIcmpCode((byte) 0)
+                        .setPayload(na)));
+        return ethPkt.serialize();
+    }
+}
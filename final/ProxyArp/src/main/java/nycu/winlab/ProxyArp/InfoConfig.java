@@ -1,13 +1,31 @@
 package nycu.winlab.ProxyArp;
 
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.Ip4Prefix;
 import org.onosproject.net.config.Config;
 import org.onosproject.core.ApplicationId;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.Function;
+
 @SuppressWarnings("UnstableApiUsage")
 public class InfoConfig extends Config<ApplicationId> {
     private static final String VIP4 = "virtual-ip4";
     private static final String VIP6 = "virtual-ip6";
     private static final String VMAC = "virtual-mac";
+    private static final String NEIGHBOR_CACHE_SIZE = "neighbor-cache-size";
+    private static final String NEIGHBOR_TTL = "neighbor-ttl";
+    private static final String FLOOD_INTERVAL_MS = "flood-interval-ms";
+    private static final String ARP_RESPONDER = "arp-responder";
+    private static final String BLOCKED_DOMAINS = "blocked-domains";
+    private static final String BLOCKED_EXCEPTIONS = "blocked-exceptions";
+    private static final String DROP_BLOCKED = "drop-blocked";
+    private static final String STATIC_NEIGHBORS = "static-neighbors";
+    private static final String CHECKPOINT_FILE = "checkpoint-file";
+    private static final String CHECKPOINT_INTERVAL = "checkpoint-interval";
+    private static final String ANNOUNCE_INTERVAL = "announce-interval";
 
     @Override
     public boolean isValid() {
@@ -25,4 +43,78 @@ public class InfoConfig extends Config<ApplicationId> {
     public String vmac() {
         return get(VMAC, null);
     }
+
+    public int neighborCacheSize() {
+        return get(NEIGHBOR_CACHE_SIZE, NeighborCache.DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Seconds a learned neighbour stays valid without traffic.
+     */
+    public int neighborTtl() {
+        return get(NEIGHBOR_TTL, (int) (NeighborCache.DEFAULT_TTL_MS / 1000));
+    }
+
+    /**
+     * Minimum time between two floods of a request for the same target.
+     */
+    public long floodIntervalMs() {
+        return get(FLOOD_INTERVAL_MS, PendingRequests.DEFAULT_FLOOD_INTERVAL_MS);
+    }
+
+    /**
+     * Whether switches answer ARP requests for the virtual gateway themselves.
+     */
+    public boolean arpResponder() {
+        return get(ARP_RESPONDER, false);
+    }
+
+    /**
+     * IPv4 domains whose ARP requests the proxy ignores.
+     */
+    public List<Ip4Prefix> blockedDomains() {
+        return getList(BLOCKED_DOMAINS, Ip4Prefix::valueOf);
+    }
+
+    /**
+     * Addresses inside a blocked domain the proxy still answers for.
+     */
+    public List<Ip4Address> blockedExceptions() {
+        return getList(BLOCKED_EXCEPTIONS, Ip4Address::valueOf);
+    }
+
+    /**
+     * Whether edge switches drop blocked ARP requests instead of sending
+     * them to the controller.
+     */
+    public boolean dropBlocked() {
+        return get(DROP_BLOCKED, false);
+    }
+
+    /**
+     * Fixed bindings as "ip, mac" or "ip, mac, connect point" entries.
+     */
+    public List<String> staticNeighbors() {
+        return getList(STATIC_NEIGHBORS, Function.identity());
+    }
+
+    public Path checkpointFile() {
+        String file = get(CHECKPOINT_FILE, null);
+        return file != null ? Paths.get(file) : NeighborCheckpointer.defaultFile();
+    }
+
+    /**
+     * Seconds between two checkpoints of the learned neighbours, 0 for none.
+     */
+    public int checkpointInterval() {
+        return get(CHECKPOINT_INTERVAL, (int) (NeighborCheckpointer.DEFAULT_INTERVAL_MS / 1000));
+    }
+
+    /**
+     * Seconds between two announcements of the virtual gateway on each edge
+     * port, 0 for none.
+     */
+    public int announceInterval() {
+        return get(ANNOUNCE_INTERVAL, (int) (GatewayAnnouncer.DEFAULT_INTERVAL_MS / 1000));
+    }
 }
@@ -0,0 +1,450 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.ProxyArp;
+
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.Ip6Address;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.ConnectPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Neighbour cache of the proxy, IP address to MAC address and location.
+ *
+ * IPv4 and IPv6 entries live in separate open-addressing tables keyed by
+ * one and two primitive longs. Lookups are optimistic reads that take no
+ * lock in the common case. Learned entries are refreshed by the traffic
+ * they are seen in and expire after the TTL. Static entries never expire
+ * and are never overwritten by learning. A full table makes room by
+ * dropping expired entries, then the least recently seen learned one.
+ */
+public class NeighborCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+    public static final long DEFAULT_TTL_MS = 300_000;
+
+    // Last-seen times are only rewritten when older than this, so a chatty
+    // host does not take the write lock on every packet
+    private static final long REFRESH_MS = 1000;
+
+    private final LongSupplier clock;
+    private volatile Table v4;
+    private volatile Table v6;
+    private volatile long ttlMs = DEFAULT_TTL_MS;
+
+    public NeighborCache() {
+        this(() -> System.nanoTime() / 1_000_000);
+    }
+
+    NeighborCache(LongSupplier clock) {
+        this.clock = clock;
+        this.v4 = new Table(DEFAULT_MAX_ENTRIES);
+        this.v6 = new Table(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Sets the size bound of each address family and the TTL of learned
+     * entries. Changing the size bound drops what has been learned so far,
+     * static entries have to be put again.
+     */
+    public void configure(int maxEntries, long ttlMs) {
+        this.ttlMs = ttlMs;
+        if (v4.maxEntries != maxEntries) {
+            v4 = new Table(Math.max(1, maxEntries));
+            v6 = new Table(Math.max(1, maxEntries));
+        }
+    }
+
+    /**
+     * Returns the live neighbour of an IP address, null if it is unknown or
+     * has expired.
+     */
+    public Neighbor lookup(IpAddress ip) {
+        long now = clock.getAsLong();
+        if (ip.isIp4()) {
+            return v4.lookup(key4(ip.getIp4Address()), 0, now - ttlMs);
+        }
+        byte[] octets = ip.toOctets();
+        return v6.lookup(toLong(octets, 0), toLong(octets, 8), now - ttlMs);
+    }
+
+    /**
+     * Learns or refreshes the binding of an IP address seen in traffic. A
+     * changed MAC address or location replaces the previous one.
+     */
+    public void learn(IpAddress ip, MacAddress mac, ConnectPoint location) {
+        put(ip, new Neighbor(mac, location, false), 0);
+    }
+
+    /**
+     * Learns a binding last seen the given time ago, as restored from a
+     * snapshot. Bindings older than the TTL are ignored.
+     */
+    public void restore(IpAddress ip, MacAddress mac, ConnectPoint location, long ageMs) {
+        if (ageMs < ttlMs) {
+            put(ip, new Neighbor(mac, location, false), Math.max(0, ageMs));
+        }
+    }
+
+    /**
+     * Pins the binding of an IP address, it neither expires nor is relearned.
+     */
+    public void putStatic(IpAddress ip, MacAddress mac, ConnectPoint location) {
+        put(ip, new Neighbor(mac, location, true), 0);
+    }
+
+    private void put(IpAddress ip, Neighbor neighbor, long ageMs) {
+        long now = clock.getAsLong() - ageMs;
+        if (ip.isIp4()) {
+            v4.put(key4(ip.getIp4Address()), 0, neighbor, now, ttlMs);
+        } else {
+            byte[] octets = ip.toOctets();
+            v6.put(toLong(octets, 0), toLong(octets, 8), neighbor, now, ttlMs);
+        }
+    }
+
+    /**
+     * Forgets an IP address, static or learned.
+     */
+    public void remove(IpAddress ip) {
+        if (ip.isIp4()) {
+            v4.remove(key4(ip.getIp4Address()), 0);
+        } else {
+            byte[] octets = ip.toOctets();
+            v6.remove(toLong(octets, 0), toLong(octets, 8));
+        }
+    }
+
+    public void clear() {
+        v4.clear();
+        v6.clear();
+    }
+
+    public int size() {
+        return v4.size() + v6.size();
+    }
+
+    /**
+     * Returns the live learned bindings, static ones are left out.
+     */
+    public List<Entry> learned() {
+        long now = clock.getAsLong();
+        List<Entry> entries = new ArrayList<>();
+        v4.collect(entries, false, now, now - ttlMs);
+        v6.collect(entries, true, now, now - ttlMs);
+        return entries;
+    }
+
+    // Tag bit above the 32 address bits keeps every IPv4 key non-zero
+    private static long key4(Ip4Address ip) {
+        return (ip.toInt() & 0xffffffffL) | (1L << 32);
+    }
+
+    private static long toLong(byte[] octets, int off) {
+        long value = 0;
+        for (int i = off; i < off + 8; i++) {
+            value = (value << 8) | (octets[i] & 0xff);
+        }
+        return value;
+    }
+
+    private static byte[] toOctets(long hi, long lo) {
+        byte[] octets = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            octets[i] = (byte) (hi >>> (56 - 8 * i));
+            octets[i + 8] = (byte) (lo >>> (56 - 8 * i));
+        }
+        return octets;
+    }
+
+    /**
+     * MAC address and location of a neighbour. The location is null for
+     * static entries configured without one.
+     */
+    public static final class Neighbor {
+        private final MacAddress mac;
+        private final ConnectPoint location;
+        private final boolean isStatic;
+
+        Neighbor(MacAddress mac, ConnectPoint location, boolean isStatic) {
+            this.mac = mac;
+            this.location = location;
+            this.isStatic = isStatic;
+        }
+
+        public MacAddress mac() {
+            return mac;
+        }
+
+        public ConnectPoint location() {
+            return location;
+        }
+
+        public boolean isStatic() {
+            return isStatic;
+        }
+
+        boolean sameBinding(Neighbor other) {
+            return mac.equals(other.mac) && Objects.equals(location, other.location);
+        }
+    }
+
+    /**
+     * A learned binding of an IP address and how long ago it was last seen.
+     */
+    public static final class Entry {
+        private final IpAddress ip;
+        private final Neighbor neighbor;
+        private final long ageMs;
+
+        Entry(IpAddress ip, Neighbor neighbor, long ageMs) {
+            this.ip = ip;
+            this.neighbor = neighbor;
+            this.ageMs = ageMs;
+        }
+
+        public IpAddress ip() {
+            return ip;
+        }
+
+        public Neighbor neighbor() {
+            return neighbor;
+        }
+
+        public long ageMs() {
+            return ageMs;
+        }
+    }
+
+    /**
+     * Open-addressing table with linear probing. A slot is free when its
+     * value is null, so the all-zero IPv6 address is a valid key.
+     */
+    private static final class Table {
+        private final StampedLock lock = new StampedLock();
+        private final int maxEntries;
+        private final long[] his;
+        private final long[] los;
+        private final Neighbor[] values;
+        private final long[] lastSeen;
+        private int size;
+
+        Table(int maxEntries) {
+            int capacity = Integer.highestOneBit(Math.max(2, maxEntries * 2 - 1)) << 1;
+            this.maxEntries = maxEntries;
+            this.his = new long[capacity];
+            this.los = new long[capacity];
+            this.values = new Neighbor[capacity];
+            this.lastSeen = new long[capacity];
+        }
+
+        Neighbor lookup(long hi, long lo, long expiredBefore) {
+            long stamp = lock.tryOptimisticRead();
+            Neighbor neighbor = find(hi, lo, expiredBefore);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    neighbor = find(hi, lo, expiredBefore);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return neighbor;
+        }
+
+        void put(long hi, long lo, Neighbor neighbor, long now, long ttlMs) {
+            // Nothing to write for a known neighbour seen again unchanged
+            long stamp = lock.tryOptimisticRead();
+            int slot = slotOf(hi, lo);
+            Neighbor current = slot >= 0 ? values[slot] : null;
+            boolean fresh = current != null && !neighbor.isStatic()
+                    && (current.isStatic() || current.sameBinding(neighbor) && now - lastSeen[slot] < REFRESH_MS);
+            if (lock.validate(stamp) && fresh) {
+                return;
+            }
+
+            stamp = lock.writeLock();
+            try {
+                slot = slotOf(hi, lo);
+                if (slot >= 0) {
+                    // Learning never overrides a static entry or newer information
+                    if (!neighbor.isStatic() && (values[slot].isStatic() || lastSeen[slot] > now)) {
+                        return;
+                    }
+                    values[slot] = neighbor;
+                    lastSeen[slot] = now;
+                    return;
+                }
+                if (size >= maxEntries && !evict(now - ttlMs)) {
+                    return;
+                }
+                insert(hi, lo, neighbor, now);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void remove(long hi, long lo) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = slotOf(hi, lo);
+                if (slot >= 0) {
+                    delete(slot);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = null;
+                }
+                size = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void collect(List<Entry> entries, boolean ip6, long now, long expiredBefore) {
+            long stamp = lock.readLock();
+            try {
+                for (int i = 0; i < values.length; i++) {
+                    Neighbor neighbor = values[i];
+                    if (neighbor != null && !neighbor.isStatic() && lastSeen[i] >= expiredBefore) {
+                        IpAddress ip = ip6 ? Ip6Address.valueOf(toOctets(his[i], los[i]))
+                                : Ip4Address.valueOf((int) his[i]);
+                        entries.add(new Entry(ip, neighbor, now - lastSeen[i]));
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private Neighbor find(long hi, long lo, long expiredBefore) {
+            int slot = slotOf(hi, lo);
+            if (slot < 0) {
+                return null;
+            }
+            Neighbor neighbor = values[slot];
+            if (neighbor == null || !neighbor.isStatic() && lastSeen[slot] < expiredBefore) {
+                return null;
+            }
+            return neighbor;
+        }
+
+        private int slotOf(long hi, long lo) {
+            int mask = values.length - 1;
+            for (int i = home(hi, lo, mask), probes = 0; probes < values.length; i = (i + 1) & mask, probes++) {
+                if (values[i] == null) {
+                    return -1;
+                }
+                if (his[i] == hi && los[i] == lo) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void insert(long hi, long lo, Neighbor neighbor, long now) {
+            int mask = values.length - 1;
+            int i = home(hi, lo, mask);
+            while (values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            his[i] = hi;
+            los[i] = lo;
+            values[i] = neighbor;
+            lastSeen[i] = now;
+            size++;
+        }
+
+        // Reclaims expired entries, or the least recently seen learned one if
+        // none has expired. Fails if every entry is static.
+        private boolean evict(long expiredBefore) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null && !values[i].isStatic() && lastSeen[i] < expiredBefore) {
+                    delete(i);
+                    // The backward shift may have moved another entry into this slot
+                    i--;
+                }
+            }
+            if (size < maxEntries) {
+                return true;
+            }
+
+            int oldest = -1;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null && !values[i].isStatic()
+                        && (oldest < 0 || lastSeen[i] < lastSeen[oldest])) {
+                    oldest = i;
+                }
+            }
+            if (oldest < 0) {
+                return false;
+            }
+            delete(oldest);
+            return true;
+        }
+
+        // Linear-probing delete that shifts the following cluster back
+        private void delete(int slot) {
+            int mask = values.length - 1;
+            int i = slot;
+            int j = slot;
+            while (true) {
+                j = (j + 1) & mask;
+                if (values[j] == null) {
+                    break;
+                }
+                int home = home(his[j], los[j], mask);
+                boolean inRange = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                if (!inRange) {
+                    his[i] = his[j];
+                    los[i] = los[j];
+                    values[i] = values[j];
+                    lastSeen[i] = lastSeen[j];
+                    i = j;
+                }
+            }
+            values[i] = null;
+            size--;
+        }
+
+        private int home(long hi, long lo, int mask) {
+            long h = (hi * 0x9E3779B97F4A7C15L) ^ (lo * 0xC2B2AE3D27D4EB4FL);
+            return (int) (h >>> 32) & mask;
+        }
+    }
+}
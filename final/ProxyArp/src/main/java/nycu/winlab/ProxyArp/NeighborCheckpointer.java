@@ -0,0 +1,132 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.ProxyArp;
+
+import static org.onlab.util.Tools.groupedThreads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically writes the learned neighbours to a checkpoint file, and
+ * reads them back when the app starts, so a restarted controller does not
+ * have to relearn every host through floods.
+ */
+public class NeighborCheckpointer {
+
+    public static final long DEFAULT_INTERVAL_MS = 60_000;
+
+    private final Logger log = LoggerFactory.getLogger("ProxyArp");
+    private final NeighborCache cache;
+
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> task;
+    private Path file = defaultFile();
+    private long intervalMs = DEFAULT_INTERVAL_MS;
+
+    public NeighborCheckpointer(NeighborCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the checkpoint file used unless configured otherwise, under
+     * the Karaf data directory.
+     */
+    public static Path defaultFile() {
+        return Paths.get(System.getProperty("karaf.data", "."), "proxyarp", "neighbors.bin");
+    }
+
+    public synchronized void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(
+                groupedThreads("proxyarp", "neighbor-checkpoint-%d", log));
+        schedule();
+    }
+
+    /**
+     * Stops the periodic checkpoints and writes a last one.
+     */
+    public synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        executor = null;
+        task = null;
+        if (intervalMs > 0) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Sets the checkpoint file and interval, an interval of 0 turns
+     * checkpoints off.
+     */
+    public synchronized void configure(Path file, long intervalMs) {
+        if (Objects.equals(this.file, file) && this.intervalMs == intervalMs) {
+            return;
+        }
+        this.file = file;
+        this.intervalMs = intervalMs;
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        schedule();
+    }
+
+    /**
+     * Loads the last checkpoint into the cache.
+     *
+     * @return the number of neighbours restored
+     */
+    public synchronized int restore() {
+        if (intervalMs <= 0) {
+            return 0;
+        }
+        try {
+            return NeighborSnapshot.read(file, cache, System.currentTimeMillis());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot restore neighbours from {}: {}", file, e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Writes the learned neighbours to the checkpoint file now.
+     */
+    public synchronized void checkpoint() {
+        try {
+            NeighborSnapshot.write(file, cache.learned(), System.currentTimeMillis());
+        } catch (IOException e) {
+            log.warn("Cannot checkpoint neighbours to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void schedule() {
+        if (executor != null && intervalMs > 0) {
+            task = executor.scheduleWithFixedDelay(this::checkpoint, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.ProxyArp;
+
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Binary checkpoint of the learned neighbours.
+ *
+ * The file holds a header with the wall-clock time it was written, then
+ * one record per binding: the address, the MAC address as six bytes, the
+ * age in milliseconds and the location if known. A new file is written
+ * next to the old one and moved over it, so a crash never leaves a
+ * half-written checkpoint behind.
+ */
+public final class NeighborSnapshot {
+
+    private static final int MAGIC = 0x4e424331; // "NBC1"
+
+    private NeighborSnapshot() {
+    }
+
+    /**
+     * Writes the given bindings to a file.
+     *
+     * @param writtenAt wall-clock time of the checkpoint in milliseconds
+     */
+    public static void write(Path file, List<NeighborCache.Entry> entries, long writtenAt) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(writtenAt);
+            out.writeInt(entries.size());
+            for (NeighborCache.Entry entry : entries) {
+                byte[] ip = entry.ip().toOctets();
+                out.writeByte(ip.length);
+                out.write(ip);
+                long mac = entry.neighbor().mac().toLong();
+                out.writeShort((int) (mac >>> 32));
+                out.writeInt((int) mac);
+                out.writeLong(entry.ageMs());
+                ConnectPoint location = entry.neighbor().location();
+                out.writeBoolean(location != null);
+                if (location != null) {
+                    out.writeUTF(location.deviceId().toString());
+                    out.writeLong(location.port().toLong());
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Restores the bindings of a file into the cache, aged by the time
+     * passed since the file was written.
+     *
+     * @param now wall-clock time in milliseconds
+     * @return the number of bindings read, 0 if there is no file
+     * @throws IOException if the file cannot be read or is not a checkpoint
+     */
+    public static int read(Path file, NeighborCache cache, long now) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a neighbour checkpoint");
+            }
+            long elapsed = Math.max(0, now - in.readLong());
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte[] ip = new byte[in.readUnsignedByte()];
+                in.readFully(ip);
+                long mac = (long) in.readUnsignedShort() << 32 | in.readInt() & 0xffffffffL;
+                long ageMs = in.readLong();
+                ConnectPoint location = null;
+                if (in.readBoolean()) {
+                    location = new ConnectPoint(DeviceId.deviceId(in.readUTF()),
+                            PortNumber.portNumber(in.readLong()));
+                }
+                IpAddress.Version version = ip.length == 4 ? IpAddress.Version.INET : IpAddress.Version.INET6;
+                cache.restore(IpAddress.valueOf(version, ip), MacAddress.valueOf(mac), location, ageMs + elapsed);
+            }
+            return count;
+        }
+    }
+}
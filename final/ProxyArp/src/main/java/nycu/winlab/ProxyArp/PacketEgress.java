@@ -0,0 +1,84 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.ProxyArp;
+
+import org.onlab.packet.Ethernet;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.packet.DefaultOutboundPacket;
+import org.onosproject.net.packet.PacketService;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Sends frames out of the data plane.
+ *
+ * A frame is serialized once however many ports it leaves through, and
+ * the buffer wrapping it is shared by all emits. A flood costs one emit
+ * per switch, carrying the precomputed treatment of its edge ports. The
+ * buffer is not made read-only since the packet provider reads its
+ * backing array, callers must not modify a frame's bytes after handing
+ * it over.
+ */
+public class PacketEgress {
+
+    private final PacketService packetService;
+    private final ConcurrentMap<PortNumber, TrafficTreatment> treatments = new ConcurrentHashMap<>();
+
+    public PacketEgress(PacketService packetService) {
+        this.packetService = packetService;
+    }
+
+    /**
+     * Sends a frame out of one port.
+     */
+    public void emit(Ethernet frame, ConnectPoint point) {
+        packetService.emit(new DefaultOutboundPacket(point.deviceId(), treatment(point.port()),
+                ByteBuffer.wrap(frame.serialize())));
+    }
+
+    /**
+     * Sends a frame out of every edge port except the one it came from.
+     *
+     * @return the number of devices the frame was sent to
+     */
+    public int flood(Ethernet frame, EdgePorts edgePorts, ConnectPoint inport) {
+        ByteBuffer data = null;
+        int emits = 0;
+        for (int i = 0; i < edgePorts.deviceCount(); i++) {
+            DeviceId device = edgePorts.device(i);
+            TrafficTreatment treatment = edgePorts.flood(i, device.equals(inport.deviceId()) ? inport.port() : null);
+            if (treatment == null) {
+                continue;
+            }
+            if (data == null) {
+                data = ByteBuffer.wrap(frame.serialize());
+            }
+            packetService.emit(new DefaultOutboundPacket(device, treatment, data));
+            emits++;
+        }
+        return emits;
+    }
+
+    private TrafficTreatment treatment(PortNumber port) {
+        return treatments.computeIfAbsent(port, p -> DefaultTrafficTreatment.builder().setOutput(p).build());
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.ProxyArp;
+
+import static org.onlab.util.Tools.groupedThreads;
+
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.ConnectPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ARP requests and neighbor solicitations waiting for an unknown target.
+ *
+ * Only the first request towards a target is flooded, later ones within
+ * the flood interval are just recorded. When the target answers, every
+ * waiting requester gets its own reply instead of each retry costing a
+ * flood of all edge ports. Targets that never answer are given up by a
+ * periodic sweep, together with the requests held for them.
+ */
+public class PendingRequests {
+
+    public static final long DEFAULT_FLOOD_INTERVAL_MS = 1000;
+
+    private static final int MAX_TARGETS = 1024;
+    private static final int MAX_REQUESTERS = 32;
+    // Targets nobody asked for during this many flood intervals are dropped
+    private static final int EXPIRY_INTERVALS = 10;
+    private static final long SWEEP_INTERVAL_MS = 1000;
+
+    private final Logger log = LoggerFactory.getLogger("ProxyArp");
+    private ScheduledExecutorService executor;
+    private final ConcurrentMap<IpAddress, Pending> pending = new ConcurrentHashMap<>();
+    private volatile long floodIntervalMs = DEFAULT_FLOOD_INTERVAL_MS;
+
+    private final AtomicLong floods = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong answered = new AtomicLong();
+
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(
+                groupedThreads("proxyarp", "pending-sweep-%d", log));
+        executor.scheduleWithFixedDelay(() -> expire(System.nanoTime() / 1_000_000),
+                SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        clear();
+        log.info("Pending requests stopped, {} floods, {} suppressed, {} answered",
+                floods(), suppressed(), answered());
+    }
+
+    public void configure(long floodIntervalMs) {
+        this.floodIntervalMs = Math.max(0, floodIntervalMs);
+    }
+
+    /**
+     * Records a request towards an unknown target.
+     *
+     * @return true if the request should be flooded now
+     */
+    public boolean request(IpAddress target, Ethernet request, ConnectPoint inport, long now) {
+        if (!pending.containsKey(target) && pending.size() >= MAX_TARGETS) {
+            expire(now);
+            if (pending.size() >= MAX_TARGETS) {
+                // Degrade to plain flooding rather than losing the request
+                floods.incrementAndGet();
+                return true;
+            }
+        }
+
+        while (true) {
+            Pending entry = pending.computeIfAbsent(target, ip -> new Pending());
+            synchronized (entry) {
+                if (entry.released) {
+                    // Answered meanwhile, start over with a fresh entry
+                    continue;
+                }
+                if (now - entry.lastActivity >= floodIntervalMs * EXPIRY_INTERVALS) {
+                    // Whoever asked that long ago has given up
+                    entry.requesters.clear();
+                }
+                entry.add(new Requester(request, inport));
+                entry.lastActivity = now;
+
+                if (!entry.flooded || now - entry.lastFlood >= floodIntervalMs) {
+                    entry.flooded = true;
+                    entry.lastFlood = now;
+                    floods.incrementAndGet();
+                    return true;
+                }
+                suppressed.incrementAndGet();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Removes a target that has been resolved and returns the requesters
+     * still waiting for it.
+     */
+    public List<Requester> resolve(IpAddress target) {
+        Pending entry = pending.remove(target);
+        if (entry == null) {
+            return Collections.emptyList();
+        }
+        synchronized (entry) {
+            entry.released = true;
+            answered.addAndGet(entry.requesters.size());
+            return new ArrayList<>(entry.requesters);
+        }
+    }
+
+    public void clear() {
+        pending.clear();
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    public long floods() {
+        return floods.get();
+    }
+
+    public long suppressed() {
+        return suppressed.get();
+    }
+
+    public long answered() {
+        return answered.get();
+    }
+
+    /**
+     * Gives up targets nobody asked for during ten flood intervals and
+     * drops the requests held for them.
+     */
+    void expire(long now) {
+        long idleSince = now - floodIntervalMs * EXPIRY_INTERVALS;
+        for (Map.Entry<IpAddress, Pending> e : pending.entrySet()) {
+            Pending entry = e.getValue();
+            synchronized (entry) {
+                if (entry.lastActivity < idleSince && pending.remove(e.getKey(), entry)) {
+                    entry.released = true;
+                    entry.requesters.clear();
+                }
+            }
+        }
+    }
+
+    private static final class Pending {
+        final List<Requester> requesters = new ArrayList<>();
+        boolean flooded;
+        long lastFlood;
+        long lastActivity;
+        boolean released;
+
+        /**
+         * Adds a requester, replacing an earlier request of the same host
+         * so retries only keep the latest one.
+         */
+        void add(Requester requester) {
+            Iterator<Requester> it = requesters.iterator();
+            while (it.hasNext()) {
+                if (it.next().sameHost(requester)) {
+                    it.remove();
+                    break;
+                }
+            }
+            if (requesters.size() >= MAX_REQUESTERS) {
+                requesters.remove(0);
+            }
+            requesters.add(requester);
+        }
+    }
+
+    /**
+     * A host waiting for an answer, the request it sent and where from.
+     */
+    public static final class Requester {
+        private final Ethernet request;
+        private final ConnectPoint location;
+
+        Requester(Ethernet request, ConnectPoint location) {
+            this.request = request;
+            this.location = location;
+        }
+
+        public Ethernet request() {
+            return request;
+        }
+
+        public ConnectPoint location() {
+            return location;
+        }
+
+        public MacAddress mac() {
+            return request.getSourceMAC();
+        }
+
+        boolean sameHost(Requester other) {
+            return mac().equals(other.mac()) && location.equals(other.location);
+        }
+    }
+}
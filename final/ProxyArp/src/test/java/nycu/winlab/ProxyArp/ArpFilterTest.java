@@ -0,0 +1,69 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.ProxyArp;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.Ip4Prefix;
+
+/**
+ * Tests of the blocked ARP target filter.
+ */
+public class ArpFilterTest {
+
+    private ArpFilter filter;
+
+    @Before
+    public void setUp() {
+        filter = new ArpFilter(null, null);
+        filter.configure(ImmutableList.of(Ip4Prefix.valueOf("192.168.70.0/24")),
+                ImmutableList.of(Ip4Address.valueOf("192.168.70.253"), Ip4Address.valueOf("192.168.70.80")),
+                false, EdgePorts.EMPTY);
+    }
+
+    private boolean blocks(String address) {
+        return filter.blocks(Ip4Address.valueOf(address).toOctets());
+    }
+
+    @Test
+    public void domainIsBlocked() {
+        assertTrue(blocks("192.168.70.1"));
+        assertTrue(blocks("192.168.70.254"));
+    }
+
+    @Test
+    public void exceptionsAreAnswered() {
+        assertFalse(blocks("192.168.70.80"));
+        assertFalse(blocks("192.168.70.253"));
+    }
+
+    @Test
+    public void otherAddressesAreAnswered() {
+        assertFalse(blocks("192.168.71.1"));
+        assertFalse(blocks("172.16.55.1"));
+    }
+
+    @Test
+    public void emptyConfigBlocksNothing() {
+        filter.configure(ImmutableList.of(), ImmutableList.of(), false, EdgePorts.EMPTY);
+        assertFalse(blocks("192.168.70.1"));
+    }
+}
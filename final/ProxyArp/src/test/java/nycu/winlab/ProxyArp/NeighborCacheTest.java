@@ -0,0 +1,102 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.ProxyArp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.ConnectPoint;
+
+/**
+ * Tests of the proxy neighbour cache.
+ */
+public class NeighborCacheTest {
+
+    private static final IpAddress IP4 = IpAddress.valueOf("192.168.63.2");
+    private static final IpAddress IP6 = IpAddress.valueOf("fd63::2");
+    private static final MacAddress MAC1 = MacAddress.valueOf("00:00:00:00:00:01");
+    private static final MacAddress MAC2 = MacAddress.valueOf("00:00:00:00:00:02");
+    private static final ConnectPoint CP1 = ConnectPoint.deviceConnectPoint("of:0000000000000001/1");
+    private static final ConnectPoint CP2 = ConnectPoint.deviceConnectPoint("of:0000000000000001/2");
+
+    private long now;
+    private NeighborCache cache;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        cache = new NeighborCache(() -> now);
+        cache.configure(4, 10_000);
+    }
+
+    @Test
+    public void learnAndLookupBothFamilies() {
+        cache.learn(IP4, MAC1, CP1);
+        cache.learn(IP6, MAC2, CP2);
+
+        assertEquals(MAC1, cache.lookup(IP4).mac());
+        assertEquals(CP1, cache.lookup(IP4).location());
+        assertEquals(MAC2, cache.lookup(IP6).mac());
+        assertNull(cache.lookup(IpAddress.valueOf("192.168.63.3")));
+    }
+
+    @Test
+    public void learnedEntriesExpireUnlessRefreshed() {
+        cache.learn(IP4, MAC1, CP1);
+        cache.learn(IP6, MAC1, CP1);
+        now += 8_000;
+        cache.learn(IP4, MAC1, CP1);
+        now += 8_000;
+
+        assertNotNull(cache.lookup(IP4));
+        assertNull(cache.lookup(IP6));
+    }
+
+    @Test
+    public void movedHostIsRelearned() {
+        cache.learn(IP4, MAC1, CP1);
+        cache.learn(IP4, MAC2, CP2);
+
+        assertEquals(MAC2, cache.lookup(IP4).mac());
+        assertEquals(CP2, cache.lookup(IP4).location());
+    }
+
+    @Test
+    public void staticEntriesAreKept() {
+        cache.putStatic(IP4, MAC1, null);
+        cache.learn(IP4, MAC2, CP2);
+        now += 100_000;
+
+        assertEquals(MAC1, cache.lookup(IP4).mac());
+    }
+
+    @Test
+    public void fullTableEvictsLeastRecentlySeen() {
+        for (int i = 1; i <= 5; i++) {
+            cache.learn(IpAddress.valueOf("10.0.0." + i), MAC1, CP1);
+            now += 10;
+        }
+
+        assertEquals(4, cache.size());
+        assertNull(cache.lookup(IpAddress.valueOf("10.0.0.1")));
+        assertNotNull(cache.lookup(IpAddress.valueOf("10.0.0.5")));
+    }
+}
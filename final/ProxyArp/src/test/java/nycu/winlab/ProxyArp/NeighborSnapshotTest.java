@@ -0,0 +1,104 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.ProxyArp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.ConnectPoint;
+
+import java.nio.file.Path;
+
+/**
+ * Tests of the neighbour checkpoint file.
+ */
+public class NeighborSnapshotTest {
+
+    private static final IpAddress IP4 = IpAddress.valueOf("192.168.63.2");
+    private static final IpAddress IP6 = IpAddress.valueOf("fd63::2");
+    private static final IpAddress VIP = IpAddress.valueOf("172.16.55.1");
+    private static final MacAddress MAC1 = MacAddress.valueOf("0a:0b:0c:0d:0e:0f");
+    private static final MacAddress MAC2 = MacAddress.valueOf("00:00:00:00:00:02");
+    private static final ConnectPoint CP = ConnectPoint.deviceConnectPoint("of:0000000000000001/3");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private long now;
+    private NeighborCache cache;
+    private Path file;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        cache = new NeighborCache(() -> now);
+        cache.configure(16, 10_000);
+        file = folder.getRoot().toPath().resolve("proxyarp").resolve("neighbors.bin");
+    }
+
+    @Test
+    public void learnedNeighborsSurviveRoundTrip() throws Exception {
+        cache.learn(IP4, MAC1, CP);
+        cache.learn(IP6, MAC2, null);
+        cache.putStatic(VIP, MAC2, null);
+        NeighborSnapshot.write(file, cache.learned(), 1_000);
+
+        NeighborCache restored = new NeighborCache(() -> now);
+        restored.configure(16, 10_000);
+        assertEquals(2, NeighborSnapshot.read(file, restored, 1_000));
+
+        assertEquals(MAC1, restored.lookup(IP4).mac());
+        assertEquals(CP, restored.lookup(IP4).location());
+        assertEquals(MAC2, restored.lookup(IP6).mac());
+        assertNull(restored.lookup(IP6).location());
+        // Static entries come from the configuration, not the checkpoint
+        assertNull(restored.lookup(VIP));
+    }
+
+    @Test
+    public void restoredNeighborsKeepAging() throws Exception {
+        cache.learn(IP4, MAC1, CP);
+        now += 4_000;
+        cache.learn(IP6, MAC2, CP);
+        NeighborSnapshot.write(file, cache.learned(), 1_000);
+
+        NeighborCache restored = new NeighborCache(() -> now);
+        restored.configure(16, 10_000);
+        NeighborSnapshot.read(file, restored, 8_000);
+
+        // 4s old at the checkpoint, 7s since then
+        assertNull(restored.lookup(IP4));
+        assertEquals(MAC2, restored.lookup(IP6).mac());
+    }
+
+    @Test
+    public void missingFileRestoresNothing() throws Exception {
+        assertEquals(0, NeighborSnapshot.read(file, cache, 0));
+    }
+
+    @Test
+    public void restoreDoesNotOverrideNewerBindings() {
+        cache.learn(IP4, MAC1, CP);
+        cache.restore(IP4, MAC2, CP, 500);
+        assertEquals(MAC1, cache.lookup(IP4).mac());
+    }
+}
@@ -19,20 +19,10 @@ import static org.onosproject.net.config.NetworkConfigEvent.Type.CONFIG_ADDED;
 import static org.onosproject.net.config.NetworkConfigEvent.Type.CONFIG_UPDATED;
 import static org.onosproject.net.config.basics.SubjectFactories.APP_SUBJECT_FACTORY;
 
-import org.onlab.packet.ARP;
 import org.onlab.packet.Ethernet;
-import org.onlab.packet.ICMP6;
-import org.onlab.packet.IPv4;
-import org.onlab.packet.IPv6;
-import org.onlab.packet.Ip4Address;
-import org.onlab.packet.Ip4Prefix;
-import org.onlab.packet.Ip6Address;
-import org.onlab.packet.Ip6Prefix;
 import org.onlab.packet.IpAddress;
 import org.onlab.packet.IpPrefix;
 import org.onlab.packet.MacAddress;
-import org.onlab.packet.ndp.NeighborDiscoveryOptions;
-import org.onlab.packet.ndp.NeighborSolicitation;
 import org.onosproject.core.ApplicationId;
 import org.onosproject.core.CoreService;
 import org.onosproject.net.ConnectPoint;
@@ -44,30 +34,42 @@ import org.onosproject.net.config.ConfigFactory;
 import org.onosproject.net.config.NetworkConfigEvent;
 import org.onosproject.net.config.NetworkConfigListener;
 import org.onosproject.net.config.NetworkConfigRegistry;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceListener;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.edge.EdgePortEvent;
+import org.onosproject.net.edge.EdgePortListener;
 import org.onosproject.net.edge.EdgePortService;
+import org.onosproject.net.flow.DefaultFlowRule;
 import org.onosproject.net.flow.DefaultTrafficSelector;
 import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowId;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleEvent;
+import org.onosproject.net.flow.FlowRuleListener;
 import org.onosproject.net.flow.FlowRuleService;
 import org.onosproject.net.flow.TrafficSelector;
 import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.host.HostEvent;
+import org.onosproject.net.host.HostListener;
 import org.onosproject.net.host.HostService;
 import org.onosproject.net.host.InterfaceIpAddress;
 import org.onosproject.net.intent.Intent;
+import org.onosproject.net.intent.IntentEvent;
+import org.onosproject.net.intent.IntentListener;
 import org.onosproject.net.intent.Key;
 import org.onosproject.net.intent.IntentService;
 import org.onosproject.net.intent.MultiPointToSinglePointIntent;
 import org.onosproject.routeservice.ResolvedRoute;
 import org.onosproject.routeservice.RouteEvent;
-import org.onosproject.routeservice.RouteInfo;
 import org.onosproject.routeservice.RouteListener;
 import org.onosproject.routeservice.RouteService;
-import org.onosproject.routeservice.RouteTableId;
 import org.onosproject.net.intent.PointToPointIntent;
 import org.onosproject.net.intf.Interface;
+import org.onosproject.net.intf.InterfaceEvent;
+import org.onosproject.net.intf.InterfaceListener;
 import org.onosproject.net.intf.InterfaceService;
-import org.onosproject.net.packet.DefaultOutboundPacket;
 import org.onosproject.net.packet.InboundPacket;
-import org.onosproject.net.packet.OutboundPacket;
 import org.onosproject.net.packet.PacketContext;
 import org.onosproject.net.packet.PacketPriority;
 import org.onosproject.net.packet.PacketProcessor;
@@ -80,16 +82,14 @@ import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.Lists;
-
-import java.nio.ByteBuffer;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 
 /**
  * Skeletal ONOS application component.
@@ -97,6 +97,9 @@ import java.util.Set;
 @Component(immediate = true)
 public class AppComponent {
 
+    // Idle timeout in seconds of the rules written by the single-switch fast path
+    private static final int FLOW_IDLE_TIMEOUT = 30;
+
     private final Logger log = LoggerFactory.getLogger("vrouter");
     private final VConfigListener cfgListener = new VConfigListener();
 
@@ -132,31 +135,65 @@ public class AppComponent {
     @Reference(cardinality = ReferenceCardinality.MANDATORY)
     protected FlowRuleService flowRuleService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    protected DeviceService deviceService;
+
     @Reference(cardinality = ReferenceCardinality.MANDATORY)
     protected HostService hostService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    protected HostIndexService hostIndexService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    protected PacketTraceService packetTraceService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    protected ProcessingMetricsService metricsService;
+
     private ApplicationId appId;
-    VConfig config = null;
+    private PeerIntentReconciler peerReconciler;
+    private IntentBatcher intentBatcher;
 
     private IntraInterProcessor intraInterProcessor = new IntraInterProcessor();
-    private Map<DeviceId, Map<MacAddress, PortNumber>> bridgeTable = new HashMap<>();
+    private final MacTable macTable = new MacTable();
+    private final PendingResolutions pendingResolutions = new PendingResolutions();
+    private final InternalHostListener hostListener = new InternalHostListener();
+    private final InternalInterfaceListener interfaceListener = new InternalInterfaceListener();
+    private final IntentIndex intentIndex = new IntentIndex();
+    private final InternalIntentListener intentListener = new InternalIntentListener();
+    private final InternalEdgePortListener edgePortListener = new InternalEdgePortListener();
+    private final InternalFlowRuleListener flowRuleListener = new InternalFlowRuleListener();
+    private final InternalDeviceListener deviceListener = new InternalDeviceListener();
+    // Rules written directly by the single-switch fast path, the ones
+    // intents compiled under the same app id belong to the intent framework
+    private final ConcurrentMap<FlowId, FlowRule> directRules = new ConcurrentHashMap<>();
+    // Aggregate intents of the routes in use, resubmitted when the edge
+    // ports change and withdrawn when their route changes
+    private final ConcurrentMap<IpPrefix, RouteIntent> routeIntents = new ConcurrentHashMap<>();
     private TransitProcessor transitProcessor = new TransitProcessor();
-
-    private ConnectPoint frrCp;
-    private MacAddress frrMac;
-    private Ip4Address gatewayIp4;
-    private Ip6Address gatewayIp6;
-    private MacAddress gatewayMac;
-    private List<String> v4Peers;
-    private List<String> v6Peers;
-    private Ip4Address taGatewayIp4;
-    private Ip6Address taGatewayIp6;
-    private Ip4Prefix taDomainIp4;
-    private Ip6Prefix taDomainIp6;
+    private final Fib<ResolvedRoute> fib = new Fib<>();
+    private final RouteEventPipeline routePipeline = new RouteEventPipeline(transitProcessor::apply);
+    private final PacketDispatcher dispatcher = new PacketDispatcher();
+    private PacketEgress packetEgress;
+    // Names of the gauges published to the metrics service
+    private final List<String> gaugeNames = new ArrayList<>();
+
+    // Swapped as a whole on every config change, null until the first one
+    private volatile RouterConfig routerConfig;
+    private volatile ProbeGenerator probeGenerator;
+    private volatile PacketClassifier classifier;
+    private volatile EdgePorts edgePorts = EdgePorts.EMPTY;
 
     @Activate
     protected void activate() {
         appId = coreService.registerApplication("nycu.winlab.vrouter");
+        peerReconciler = new PeerIntentReconciler(intentService, interfaceService);
+        intentBatcher = new IntentBatcher(intentService, intentIndex::release);
+        intentBatcher.start();
+        pendingResolutions.start();
+        packetEgress = new PacketEgress(packetService);
+        edgePortService.addListener(edgePortListener);
+        refreshEdgePorts();
         log.info("vrouter AppComponent started");
 
         // Register the configuration factory
@@ -164,6 +201,7 @@ public class AppComponent {
         cfgService.registerConfigFactory(factory);
 
         // Register the intra-domain processor
+        dispatcher.start();
         packetService.addProcessor(intraInterProcessor, PacketProcessor.director(2));
         TrafficSelector selectorIpv4 = DefaultTrafficSelector.builder()
                 .matchEthType(Ethernet.TYPE_IPV4).build();
@@ -172,13 +210,24 @@ public class AppComponent {
                 .matchEthType(Ethernet.TYPE_IPV6).build();
         packetService.requestPackets(selectorIpv6, PacketPriority.REACTIVE, appId);
 
-        // Register the transit processor
+        hostService.addListener(hostListener);
+        intentService.addListener(intentListener);
+        interfaceService.addListener(interfaceListener);
+        flowRuleService.addListener(flowRuleListener);
+        deviceService.addListener(deviceListener);
+
+        // Register the transit processor, the route service replays the
+        // existing routes to it, which also fills the FIB
+        routePipeline.start();
         routeService.addListener(transitProcessor);
+        registerGauges();
 
     }
 
     @Deactivate
     protected void deactivate() {
+        unregisterGauges();
+
         // Unregister the configuration factory
         cfgService.removeListener(cfgListener);
         cfgService.unregisterConfigFactory(factory);
@@ -186,6 +235,7 @@ public class AppComponent {
         // Unregister the intra-domain processor
         packetService.removeProcessor(intraInterProcessor);
         intraInterProcessor = null;
+        dispatcher.stop();
         TrafficSelector selectorIpv4 = DefaultTrafficSelector.builder()
                 .matchEthType(Ethernet.TYPE_IPV4).build();
         packetService.cancelPackets(selectorIpv4, PacketPriority.REACTIVE, appId);
@@ -195,6 +245,22 @@ public class AppComponent {
 
         // Unregister the transit processor
         routeService.removeListener(transitProcessor);
+        hostService.removeListener(hostListener);
+        intentService.removeListener(intentListener);
+        interfaceService.removeListener(interfaceListener);
+        edgePortService.removeListener(edgePortListener);
+        deviceService.removeListener(deviceListener);
+        edgePorts = EdgePorts.EMPTY;
+        intentIndex.clear();
+        routeIntents.clear();
+        intentBatcher.stop();
+        pendingResolutions.stop();
+        routePipeline.stop();
+        fib.clear();
+        macTable.clear();
+        flowRuleService.removeListener(flowRuleListener);
+        flowRuleService.removeFlowRules(directRules.values().toArray(new FlowRule[0]));
+        directRules.clear();
 
         log.info("vrouter AppComponent stopped");
     }
@@ -206,84 +272,44 @@ public class AppComponent {
                     event.configClass().equals(VConfig.class)) {
                 VConfig newconfig = cfgService.getConfig(appId, VConfig.class);
 
-                if (newconfig != null) {
-                    config = newconfig;
-
-                    frrMac = MacAddress.valueOf(config.frrMac());
-                    frrCp = ConnectPoint.fromString(config.frrCp());
-                    gatewayIp4 = Ip4Address.valueOf(config.gatewayIp4());
-                    gatewayIp6 = Ip6Address.valueOf(config.gatewayIp6());
-                    gatewayMac = MacAddress.valueOf(config.gatewayMac());
-                    v4Peers = config.v4Peers();
-                    v6Peers = config.v6Peers();
-                    taGatewayIp4 = Ip4Address.valueOf(config.taGatewayIp4());
-                    taGatewayIp6 = Ip6Address.valueOf(config.taGatewayIp6());
-                    taDomainIp4 = Ip4Prefix.valueOf(config.taDomainIp4());
-                    taDomainIp6 = Ip6Prefix.valueOf(config.taDomainIp6());
-                    log.info("R1 mac = {}", frrMac);
-                    log.info("R1 connect point = {}", frrCp);
-                    log.info("gateway ipv4 = {}, ipv6 = {}", gatewayIp4, gatewayIp6);
-                    log.info("gateway mac = {}", gatewayMac);
-
-                    for (String peer : v4Peers) {
-                        log.info("v4Peer = {}", peer);
-                        String[] ips = peer.split(", ");
-                        floodArp(Ip4Address.valueOf(ips[1]));
-                    }
-                    for (String peer : v6Peers) {
-                        log.info("v6Peer = {}", peer);
-                        String[] ips = peer.split(", ");
-                        floodNdp(Ip6Address.valueOf(ips[1]));
-                    }
-
-                    withdrawPointToPointIntent();
-                    BGPConnection();
-
+                if (newconfig == null) {
+                    return;
                 }
-            }
-        }
-
-        protected void BGPConnection() {
-            // Install flows for BGP connection
-            for (String peer : v4Peers) {
-                String[] ips = peer.split(", ");
-                Ip4Address ip1 = Ip4Address.valueOf(ips[0]);
-                Ip4Address ip2 = Ip4Address.valueOf(ips[1]);
-
-                Interface intf = interfaceService.getMatchingInterface(ip1);
-
-                TrafficSelector selector1 = DefaultTrafficSelector.builder()
-                        .matchEthType(Ethernet.TYPE_IPV4)
-                        .matchIPDst(IpPrefix.valueOf(ip2, 32))
-                        .build();
-                TrafficSelector selector2 = DefaultTrafficSelector.builder()
-                        .matchEthType(Ethernet.TYPE_IPV4)
-                        .matchIPDst(IpPrefix.valueOf(ip1, 32))
-                        .build();
 
-                installIntent(frrCp, intf.connectPoint(), selector1, null, 100);
-                installIntent(intf.connectPoint(), frrCp, selector2, null, 100);
-
-            }
-
-            for (String peer : v6Peers) {
-                String[] ips = peer.split(", ");
-                Ip6Address ip1 = Ip6Address.valueOf(ips[0]);
-                Ip6Address ip2 = Ip6Address.valueOf(ips[1]);
-
-                Interface intf = interfaceService.getMatchingInterface(ip1);
-
-                TrafficSelector selector1 = DefaultTrafficSelector.builder()
-                        .matchEthType(Ethernet.TYPE_IPV6)
-                        .matchIPv6Dst(Ip6Prefix.valueOf(ip2, 128))
-                        .build();
-                TrafficSelector selector2 = DefaultTrafficSelector.builder()
-                        .matchEthType(Ethernet.TYPE_IPV6)
-                        .matchIPv6Dst(Ip6Prefix.valueOf(ip1, 128))
-                        .build();
-
-                installIntent(frrCp, intf.connectPoint(), selector1, null, 100);
-                installIntent(intf.connectPoint(), frrCp, selector2, null, 100);
+                RouterConfig previous = routerConfig;
+                RouterConfig next;
+                try {
+                    next = RouterConfig.of(newconfig);
+                } catch (IllegalArgumentException e) {
+                    log.error("Invalid router config, keeping the previous one: {}", e.getMessage());
+                    return;
+                }
+                routerConfig = next;
+                classifier = new PacketClassifier(next, interfaceService.getInterfaces(), fib);
+
+                log.info("R1 mac = {}", next.frrMac());
+                log.info("R1 connect point = {}", next.frrCp());
+                log.info("gateway ipv4 = {}, ipv6 = {}", next.gatewayIp4(), next.gatewayIp6());
+                log.info("gateway mac = {}", next.gatewayMac());
+                routePipeline.configure(next.routeBatchWindowMs());
+                macTable.configure(next.macTableSize(), next.macIdleTimeoutMs());
+                pendingResolutions.configure(next.probeIntervalMs(), next.pendingPackets());
+                intentBatcher.configure(next.intentBatchSize(), next.intentBatchDelayMs());
+
+                for (RouterConfig.Peer peer : next.removedPeers(previous)) {
+                    log.info("Removed peer = {}", peer);
+                }
+                ProbeGenerator probes = new ProbeGenerator(packetService, () -> edgePorts, next);
+                probeGenerator = probes;
+
+                // Probe only new peers, their intents are reconciled below
+                List<IpAddress> newPeers = new ArrayList<>();
+                for (RouterConfig.Peer peer : next.addedPeers(previous)) {
+                    log.info("Added peer = {}", peer);
+                    newPeers.add(peer.remote());
+                }
+                probes.probe(newPeers);
+                peerReconciler.reconcile(appId, next);
             }
         }
     }
@@ -296,178 +322,208 @@ public class AppComponent {
             if (context.isHandled()) {
                 return;
             }
+            long start = System.nanoTime();
             InboundPacket pkt = context.inPacket();
             Ethernet ethPkt = pkt.parsed();
 
-            if (ethPkt == null) {
+            RouterConfig cfg = routerConfig;
+            PacketClassifier packetClassifier = classifier;
+            if (ethPkt == null || cfg == null || packetClassifier == null) {
                 return;
             }
+            PacketClassifier.Classification cls = packetClassifier.classify(ethPkt, pkt.receivedFrom());
+            long classified = System.nanoTime();
+            metricsService.record(ProcessingStage.PARSE, classified - start);
+            if (cls.routeNanos() >= 0) {
+                metricsService.record(ProcessingStage.ROUTE_LOOKUP, cls.routeNanos());
+            }
+            trace(context, "classify", cls.decision());
 
-            boolean externalIn = processExternalIn(context);
-            boolean externalOut = processExternalOut(context);
-
-            if (externalIn || externalOut) {
+            // ARP and NDP are answered by the proxy ARP application, only
+            // their sender is learned here and the packet is left alone
+            if (cls.isNeighborDiscovery()) {
+                macTable.learn(pkt.receivedFrom().deviceId(), ethPkt.getSourceMAC(),
+                        pkt.receivedFrom().port());
                 return;
             }
 
-            processIntraDomain(context);
+            // The rest is handled on a worker, packets of a flow share one
+            context.block();
+            int flowKey = ethPkt.getSourceMAC().hashCode() ^ ethPkt.getDestinationMAC().hashCode()
+                    ^ (cls.dstIp() != null ? cls.dstIp().hashCode() : 0);
+            if (!dispatcher.execute(flowKey, () -> handle(context, cfg, cls, classified, start))) {
+                trace(context, "dispatch-dropped", null);
+            }
         }
 
-        private void flood(PacketContext context) {
-
-            for (ConnectPoint cp : edgePortService.getEdgePoints()) {
-                if (cp.equals(context.inPacket().receivedFrom())) {
-                    continue;
-                }
-                packetOut(context.inPacket().parsed(), cp);
-
+        private void handle(PacketContext context, RouterConfig cfg, PacketClassifier.Classification cls,
+                long classified, long start) {
+            ProcessingStage stage;
+            switch (cls.decision()) {
+                case INBOUND:
+                    processExternalIn(context, cfg, cls.dstIp());
+                    stage = ProcessingStage.EXTERNAL_IN;
+                    break;
+                case OUTBOUND:
+                case TRANSIT:
+                    processExternalOut(context, cfg, cls.route(), cls.dstIp());
+                    stage = ProcessingStage.EXTERNAL_OUT;
+                    break;
+                case CONTROL:
+                    processIntraDomain(context);
+                    stage = ProcessingStage.INTRA_DOMAIN;
+                    break;
+                case INTRA:
+                default:
+                    processIntraDomain(context);
+                    stage = ProcessingStage.INTRA_DOMAIN;
+                    break;
             }
+            long end = System.nanoTime();
+            metricsService.record(stage, end - classified);
+            // Includes the time spent waiting in the worker queue
+            metricsService.record(ProcessingStage.TOTAL, end - start);
         }
 
-        private void packetOut(Ethernet ethPkt, ConnectPoint cp) {
-            TrafficTreatment treatment = DefaultTrafficTreatment.builder()
-                    .setOutput(cp.port())
-                    .build();
-            OutboundPacket outPacket = new DefaultOutboundPacket(
-                    cp.deviceId(), treatment, ByteBuffer.wrap(ethPkt.serialize()));
-            packetService.emit(outPacket);
+        private void trace(PacketContext context, String event, Object detail) {
+            if (packetTraceService.isActive()) {
+                packetTraceService.record(context, event, detail);
+            }
         }
 
-        private boolean processExternalIn(PacketContext context) {
-            InboundPacket pkt = context.inPacket();
-            Ethernet ethPkt = pkt.parsed();
-
-            if (ethPkt.getEtherType() == Ethernet.TYPE_IPV4) {
-                IPv4 ipv4Packet = (IPv4) ethPkt.getPayload();
-                Ip4Address srcIp = Ip4Address.valueOf(ipv4Packet.getSourceAddress());
-                Ip4Address dstIp = Ip4Address.valueOf(ipv4Packet.getDestinationAddress());
+        private void flood(PacketContext context) {
+            packetEgress.flood(context.inPacket().parsed(), edgePorts, context.inPacket().receivedFrom());
+        }
 
-                Optional<ResolvedRoute> route = routeService.longestPrefixLookup(srcIp);
-                if (!route.isPresent()) {
-                    log.warn("No Route srcIp!" + srcIp);
-                    return false;
-                }
+        private void packetOut(Ethernet ethPkt, ConnectPoint cp) {
+            packetEgress.emit(ethPkt, cp);
+        }
 
-                hostService.requestMac(dstIp);
-                Host dstHost = getHost(dstIp);
-                if (dstHost == null) {
-                    log.warn("Dst host not found! Flood!");
-                    flood(context);
-                    context.block();
-                    return false;
-                }
+        /**
+         * Forwards a packet from a peer to the local host it is addressed to.
+         */
+        private void processExternalIn(PacketContext context, RouterConfig cfg, IpAddress dstIp) {
+            HostBinding dstHost = getHost(dstIp);
+            if (dstHost == null) {
+                // Same source as the inbound intent below
+                resolve(context, dstIp, dstIp.isIp4() ? cfg.gatewayMac() : cfg.frrMac());
+                return;
+            }
 
-                MacAddress dstMac = dstHost.mac();
-                ConnectPoint egress = dstHost.location();
-                ConnectPoint ingress = pkt.receivedFrom();
+            MacAddress dstMac = dstHost.mac();
+            ConnectPoint egress = dstHost.location();
+            ConnectPoint ingress = context.inPacket().receivedFrom();
 
-                TrafficSelector.Builder selector = DefaultTrafficSelector.builder();
+            TrafficSelector.Builder selector = DefaultTrafficSelector.builder();
+            TrafficTreatment.Builder treatment = DefaultTrafficTreatment.builder();
+            if (dstIp.isIp4()) {
                 selector.matchEthType(Ethernet.TYPE_IPV4)
                         .matchIPDst(IpPrefix.valueOf(dstIp, 32))
-                        .matchEthDst(frrMac);
-
-                TrafficTreatment.Builder treatment = DefaultTrafficTreatment.builder();
+                        .matchEthDst(cfg.frrMac());
                 treatment.setEthDst(dstMac) // get from hostService
-                        .setEthSrc(gatewayMac);
-
-                installIntent(ingress, egress, selector.build(), treatment.build(), 24);
-            } else if (ethPkt.getEtherType() == Ethernet.TYPE_IPV6) {
-                IPv6 ipv6Packet = (IPv6) ethPkt.getPayload();
-                Ip6Address srcIp = Ip6Address.valueOf(ipv6Packet.getSourceAddress());
-                Ip6Address dstIp = Ip6Address.valueOf(ipv6Packet.getDestinationAddress());
-
-                Optional<ResolvedRoute> route = routeService.longestPrefixLookup(srcIp);
-                if (!route.isPresent()) {
-                    log.warn("No Route srcIp!" + srcIp);
-                    context.block();
-                    return false;
-                }
-
-                hostService.requestMac(dstIp);
-                Host dstHost = getHost(dstIp);
-                if (dstHost == null) {
-                    log.warn("Dst host not found! Flood!");
-                    flood(context);
-                    context.block();
-                    return false;
-                }
-
-                MacAddress dstMac = dstHost.mac();
-                ConnectPoint egress = dstHost.location();
-                ConnectPoint ingress = pkt.receivedFrom();
-
-                TrafficSelector.Builder selector = DefaultTrafficSelector.builder();
+                        .setEthSrc(cfg.gatewayMac());
+            } else {
                 selector.matchEthType(Ethernet.TYPE_IPV6)
                         .matchIPv6Dst(IpPrefix.valueOf(dstIp, 128));
-
-                TrafficTreatment.Builder treatment = DefaultTrafficTreatment.builder();
                 treatment.setEthDst(dstMac) // get from hostService
-                        .setEthSrc(frrMac);
-
-                installIntent(ingress, egress, selector.build(), treatment.build(), 24);
+                        .setEthSrc(cfg.frrMac());
             }
 
-            return true;
-
+            installIntent(ingress, egress, selector.build(), treatment.build(), 24);
+            trace(context, "in-intent", egress);
         }
 
-        private boolean processExternalOut(PacketContext context) {
-            InboundPacket pkt = context.inPacket();
-            Ethernet ethPkt = pkt.parsed();
-
-            if (ethPkt.getEtherType() == Ethernet.TYPE_IPV4) {
-                IPv4 ipv4Packet = (IPv4) ethPkt.getPayload();
-                Ip4Address dstIp = Ip4Address.valueOf(ipv4Packet.getDestinationAddress());
-
-                ConnectPoint ingress = pkt.receivedFrom();
-
-                Optional<ResolvedRoute> route = routeService.longestPrefixLookup(dstIp);
-                if (!route.isPresent()) {
-                    log.warn("No Route dstIp!" + dstIp);
-                    return false;
-                }
+        /**
+         * Forwards a packet towards the next hop of the route of its
+         * destination.
+         */
+        private void processExternalOut(PacketContext context, RouterConfig cfg, ResolvedRoute route,
+                IpAddress dstIp) {
+            ConnectPoint ingress = context.inPacket().receivedFrom();
+
+            IpAddress nextHopIp = route.nextHop();
+            HostBinding nextHop = getHost(nextHopIp);
+            if (nextHop == null) {
+                resolve(context, nextHopIp, cfg.gatewayMac());
+                return;
+            }
+            MacAddress nextHopMac = nextHop.mac();
+            Interface intf = interfaceService.getMatchingInterface(nextHopIp);
+            if (intf == null) {
+                trace(context, "out-no-interface", nextHopIp);
+                return;
+            }
+            ConnectPoint egress = intf.connectPoint();
+            if (cfg.aggregateRoutes()) {
+                installRouteIntent(route, egress, nextHopMac, cfg.gatewayMac());
+                trace(context, "out-route-intent", route.prefix());
+                return;
+            }
 
-                IpAddress nextHopIp = route.get().nextHop();
-                MacAddress nextHopMac = getHost(nextHopIp).mac();
-                Interface intf = interfaceService.getMatchingInterface(nextHopIp);
-                ConnectPoint egress = intf.connectPoint();
-                TrafficSelector.Builder selector = DefaultTrafficSelector.builder();
+            TrafficSelector.Builder selector = DefaultTrafficSelector.builder();
+            if (dstIp.isIp4()) {
                 selector.matchEthType(Ethernet.TYPE_IPV4)
                         .matchIPDst(IpPrefix.valueOf(dstIp, 32));
+            } else {
+                selector.matchEthType(Ethernet.TYPE_IPV6)
+                        .matchIPv6Dst(IpPrefix.valueOf(dstIp, 128));
+            }
 
-                TrafficTreatment.Builder treatment = DefaultTrafficTreatment.builder();
-                treatment.setEthDst(nextHopMac) // get from hostService
-                        .setEthSrc(gatewayMac);
-
-                installIntent(ingress, egress, selector.build(), treatment.build(), 25);
-            } else if (ethPkt.getEtherType() == Ethernet.TYPE_IPV6) {
-                IPv6 ipv6Packet = (IPv6) ethPkt.getPayload();
-                Ip6Address dstIp = Ip6Address.valueOf(ipv6Packet.getDestinationAddress());
-
-                ConnectPoint ingress = pkt.receivedFrom();
+            TrafficTreatment.Builder treatment = DefaultTrafficTreatment.builder();
+            treatment.setEthDst(nextHopMac) // get from hostService
+                    .setEthSrc(cfg.gatewayMac());
 
-                Optional<ResolvedRoute> route = routeService.longestPrefixLookup(dstIp);
-                if (!route.isPresent()) {
-                    log.warn("No Route dstIp!" + dstIp);
-                    return false;
-                }
+            installIntent(ingress, egress, selector.build(), treatment.build(), 25);
+            trace(context, "out-intent", egress);
+        }
 
-                IpAddress nextHopIp = route.get().nextHop();
-                MacAddress nextHopMac = getHost(nextHopIp).mac();
-                Interface intf = interfaceService.getMatchingInterface(nextHopIp);
-                ConnectPoint egress = intf.connectPoint();
-                TrafficSelector.Builder selector = DefaultTrafficSelector.builder();
+        /**
+         * Covers all outbound traffic of a route with one intent matching the
+         * route prefix, rather than one intent per destination host.
+         */
+        private void installRouteIntent(ResolvedRoute route, ConnectPoint egress,
+                MacAddress nextHopMac, MacAddress gatewayMac) {
+            long start = System.nanoTime();
+            TrafficSelector.Builder selector = DefaultTrafficSelector.builder();
+            if (route.prefix().isIp4()) {
+                selector.matchEthType(Ethernet.TYPE_IPV4)
+                        .matchIPDst(route.prefix());
+            } else {
                 selector.matchEthType(Ethernet.TYPE_IPV6)
-                        .matchIPv6Dst(IpPrefix.valueOf(dstIp, 128));
+                        .matchIPv6Dst(route.prefix());
+            }
 
-                TrafficTreatment.Builder treatment = DefaultTrafficTreatment.builder();
-                treatment.setEthDst(nextHopMac) // get from hostService
-                        .setEthSrc(gatewayMac);
+            TrafficTreatment treatment = DefaultTrafficTreatment.builder()
+                    .setEthDst(nextHopMac)
+                    .setEthSrc(gatewayMac)
+                    .build();
 
-                installIntent(ingress, egress, selector.build(), treatment.build(), 25);
+            RouteIntent routeIntent = new RouteIntent(Key.of("route:" + route.prefix(), appId),
+                    egress, selector.build(), treatment);
+            // Packet-ins that arrive while the intent installs are absorbed
+            if (!routeIntent.equals(routeIntents.put(route.prefix(), routeIntent))) {
+                submitRouteIntent(route.prefix(), routeIntent);
             }
+            metricsService.record(ProcessingStage.INTENT_SUBMIT, System.nanoTime() - start);
+        }
 
-            return true;
+        /**
+         * Holds a packet until the MAC address of the given IP is known,
+         * probing for it at most once per probe interval. The packet is then
+         * sent from the given source MAC address.
+         */
+        private void resolve(PacketContext context, IpAddress ip, MacAddress srcMac) {
+            long now = System.nanoTime() / 1_000_000;
+            if (pendingResolutions.enqueue(ip, context.inPacket().parsed(), srcMac, now)) {
+                trace(context, "resolve-probe", ip);
+                hostService.requestMac(ip);
+                ProbeGenerator probes = probeGenerator;
+                if (probes != null) {
+                    probes.probe(ip);
+                }
+            }
+            trace(context, "resolve-hold", ip);
+            context.block();
         }
 
         private void processIntraDomain(PacketContext context) {
@@ -478,30 +534,26 @@ public class AppComponent {
             MacAddress srcMac = ethPkt.getSourceMAC();
             MacAddress dstMac = ethPkt.getDestinationMAC();
 
-            log.info("recDevId = {}, srcMac = {}, dstMac = {}, inPort = {}", recDevId, srcMac, dstMac, inPort);
-
-            // rec packet-in from new device, create new table for it
-            if (bridgeTable.get(recDevId) == null) {
-                bridgeTable.put(recDevId, new HashMap<>());
+            PortNumber movedFrom = macTable.learn(recDevId, srcMac, inPort);
+            if (movedFrom != null) {
+                log.debug("MAC address `{}` moved on `{}`. Port:`{}` => Port:`{}`",
+                        srcMac, recDevId, movedFrom, inPort);
+                trace(context, "intra-moved", movedFrom);
             }
 
-            if (bridgeTable.get(recDevId).get(srcMac) == null) {
-                bridgeTable.get(recDevId).put(srcMac, inPort);
-                log.info("Add an entry to the port table of `{}`. MAC address: `{}` => Port:`{}`",
-                        recDevId, srcMac, inPort);
-            }
-
-            if (bridgeTable.get(recDevId).get(dstMac) == null) {
+            PortNumber outPort = macTable.lookup(recDevId, dstMac);
+            if (outPort == null) {
+                trace(context, "intra-flood", null);
                 flood(context);
-            } else if (bridgeTable.get(recDevId).get(dstMac) != null) {
-                ConnectPoint ingressPoint = new ConnectPoint(recDevId, inPort);
-                ConnectPoint egressPoint = new ConnectPoint(recDevId,
-                        bridgeTable.get(recDevId).get(dstMac));
+            } else {
+                // The MAC table is per switch, so the destination port is
+                // always on the receiving switch: one rule, no intent
                 TrafficSelector selector = DefaultTrafficSelector.builder()
                         .matchEthDst(dstMac).matchEthSrc(srcMac).build();
-                installIntent(ingressPoint, egressPoint, selector, null, 20);
-                log.info("MAC address `{}` is matched on `{}`. Install a flow rule.", dstMac,
-                        recDevId);
+                installRule(recDevId, selector, DefaultTrafficTreatment.builder()
+                        .setOutput(outPort).build(), 20);
+                packetOut(ethPkt, new ConnectPoint(recDevId, outPort));
+                trace(context, "intra-rule", outPort);
             }
         }
     }
@@ -510,128 +562,279 @@ public class AppComponent {
     public class TransitProcessor implements RouteListener {
         @Override
         public void event(RouteEvent event) {
+            ResolvedRoute route = event.subject();
             switch (event.type()) {
                 case ROUTE_ADDED:
-                    // log.info("Route added: " + event.subject());
-                    installTransitIntent();
+                case ROUTE_UPDATED:
+                    fib.put(route.prefix(), route);
+                    routePipeline.submit(event);
+                    break;
+                case ROUTE_REMOVED:
+                    fib.remove(route.prefix());
+                    routePipeline.submit(event);
+                    break;
+                default:
                     break;
+            }
+        }
+
+        /**
+         * Applies a coalesced route event to the transit intents.
+         */
+        void apply(RouteEvent event) {
+            ResolvedRoute route = event.subject();
+            switch (event.type()) {
+                case ROUTE_ADDED:
                 case ROUTE_UPDATED:
-                    // log.info("Route updated: " + event.subject());
-                    // withdrawMultiPointToSinglePointIntent();
-                    installTransitIntent();
+                    // Only the intent of the affected prefix is recompiled,
+                    // an update resubmits it under the same key. The
+                    // aggregate intent is rebuilt by the next packet-in,
+                    // which resolves the new next hop's MAC address
+                    installTransitIntent(route);
+                    withdrawRouteIntent(route.prefix());
                     break;
                 case ROUTE_REMOVED:
-                    // log.info("Route removed: " + event.subject());
+                    withdrawTransitIntent(route.prefix());
+                    withdrawRouteIntent(route.prefix());
                     break;
                 default:
                     break;
             }
         }
 
-        private void installTransitIntent() {
-
-            Collection<RouteTableId> routeTables = routeService.getRouteTables();
-            for (RouteTableId routeTable : routeTables) {
-                Collection<RouteInfo> routes = routeService.getRoutes(routeTable);
-                for (RouteInfo routeInfo : routes) {
-                    Optional<ResolvedRoute> route = routeInfo.bestRoute();
-                    if (route.isPresent()) {
-                        log.info("-----------------");
-                        ResolvedRoute bestRoute = route.get();
-
-                        log.info("Best Route Prefix: " + bestRoute.prefix());
-                        log.info("Next Hop: " + bestRoute.nextHop());
-
-                        Iterable<Interface> interfaces = interfaceService.getInterfaces();
-                        Set<FilteredConnectPoint> srcPoints = new HashSet<>();
-                        int numOdCP = 0;
-                        for (Interface intf : interfaces) {
-                            boolean addSrcPoint = true;
-                            try {
-                                for (InterfaceIpAddress ip : intf.ipAddressesList()) {
-                                    IpAddress ipAddress = ip.ipAddress();
-                                    IpPrefix subnetPrefix = ip.subnetAddress();
-                                    log.info("Interface IP Prefix: " + subnetPrefix.toString());
-
-                                    if (ipAddress.isIp4() && bestRoute.nextHop().isIp4()) {
-                                        if (subnetPrefix.contains(bestRoute.nextHop())) {
-                                            log.info(bestRoute.nextHop() + " is in " + subnetPrefix);
-                                            addSrcPoint = false;
-                                        } else {
-                                            log.info(bestRoute.nextHop() + " is not in " + subnetPrefix);
-                                        }
-                                    } else if (ipAddress.isIp6() && bestRoute.nextHop().isIp6()) {
-                                        if (subnetPrefix.contains(bestRoute.nextHop())) {
-                                            log.info(bestRoute.nextHop() + " is in " + subnetPrefix);
-                                            addSrcPoint = false;
-                                        } else {
-                                            log.info(bestRoute.nextHop() + " is not in " + subnetPrefix);
-                                        }
-                                    }
-                                }
-                                if (addSrcPoint) {
-                                    log.info("Add srcPoint: " + intf.connectPoint());
-                                    ConnectPoint ingressPoint = intf.connectPoint();
-                                    srcPoints.add(new FilteredConnectPoint(ingressPoint));
-                                    numOdCP++;
-                                }
-                            } catch (Exception e) {
-                                log.error("*****" + e.getMessage());
-                            }
-
-                            log.info("Number of ipAddresses: " + intf.ipAddressesList().size());
-
-                        }
-
-                        log.info("Number of srcPoints: " + srcPoints.size());
-                        log.info("numOdCP: " + numOdCP);
-                        Interface intf2 = interfaceService.getMatchingInterface(bestRoute.nextHop());
-                        ConnectPoint egressPoint = intf2.connectPoint();
-                        if (srcPoints.isEmpty() == false) {
-                            log.info("Install MultiIntent!");
-                            if (bestRoute.nextHop().isIp4()) {
-                                TrafficSelector selector = DefaultTrafficSelector.builder()
-                                        .matchEthType(Ethernet.TYPE_IPV4)
-                                        .matchIPDst(bestRoute.prefix())
-                                        .build();
-                                installMultiIntent(srcPoints, egressPoint, selector, null);
-                            } else if (bestRoute.nextHop().isIp6()) {
-                                TrafficSelector selector = DefaultTrafficSelector.builder()
-                                        .matchEthType(Ethernet.TYPE_IPV6)
-                                        .matchIPv6Dst(bestRoute.prefix())
-                                        .build();
-                                installMultiIntent(srcPoints, egressPoint, selector, null);
-                            }
-
-                        } else {
-                            log.info("No Install MultiIntent(empty srcPoints)");
-                        }
-                        log.info("-----------------");
-
-                    } else {
-                        log.info("No best route available.");
+        private void installTransitIntent(ResolvedRoute bestRoute) {
+            log.debug("Best Route Prefix: {}, Next Hop: {}", bestRoute.prefix(), bestRoute.nextHop());
+
+            Interface egressIntf = interfaceService.getMatchingInterface(bestRoute.nextHop());
+            if (egressIntf == null) {
+                log.warn("No interface towards next hop {}", bestRoute.nextHop());
+                withdrawTransitIntent(bestRoute.prefix());
+                return;
+            }
+
+            // Traffic of the prefix may enter from every interface that is
+            // not on the next hop's subnet
+            Set<FilteredConnectPoint> srcPoints = new HashSet<>();
+            for (Interface intf : interfaceService.getInterfaces()) {
+                boolean addSrcPoint = true;
+                for (InterfaceIpAddress ip : intf.ipAddressesList()) {
+                    if (ip.ipAddress().version() == bestRoute.nextHop().version() &&
+                            ip.subnetAddress().contains(bestRoute.nextHop())) {
+                        addSrcPoint = false;
+                        break;
                     }
+                }
+                if (addSrcPoint) {
+                    srcPoints.add(new FilteredConnectPoint(intf.connectPoint()));
+                }
+            }
 
+            if (srcPoints.isEmpty()) {
+                log.debug("No Install MultiIntent(empty srcPoints)");
+                withdrawTransitIntent(bestRoute.prefix());
+                return;
+            }
+
+            TrafficSelector.Builder selector = DefaultTrafficSelector.builder();
+            if (bestRoute.prefix().isIp4()) {
+                selector.matchEthType(Ethernet.TYPE_IPV4)
+                        .matchIPDst(bestRoute.prefix());
+            } else {
+                selector.matchEthType(Ethernet.TYPE_IPV6)
+                        .matchIPv6Dst(bestRoute.prefix());
+            }
+
+            submitMultiIntent(transitKey(bestRoute.prefix()), srcPoints, egressIntf.connectPoint(),
+                    selector.build(), null, 15);
+        }
+
+        private void withdrawTransitIntent(IpPrefix prefix) {
+            Intent intent = intentService.getIntent(transitKey(prefix));
+            if (intent != null) {
+                intentService.withdraw(intent);
+                log.debug("Transit intent of {} is withdrawn.", prefix);
+            }
+        }
+
+        private Key transitKey(IpPrefix prefix) {
+            return Key.of("transit:" + prefix, appId);
+        }
+
+    }
+
+    // ===== Release packets held for unresolved hosts =====
+    private class InternalHostListener implements HostListener {
+        @Override
+        public void event(HostEvent event) {
+            switch (event.type()) {
+                case HOST_ADDED:
+                case HOST_UPDATED:
+                case HOST_MOVED:
+                    releasePending(event.subject());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void releasePending(Host host) {
+            for (IpAddress ip : host.ipAddresses()) {
+                for (PendingResolutions.HeldPacket held : pendingResolutions.release(ip)) {
+                    Ethernet ethPkt = held.frame();
+                    ethPkt.setDestinationMACAddress(host.mac())
+                            .setSourceMACAddress(held.srcMac());
+                    packetEgress.emit(ethPkt, host.location());
                 }
+            }
+        }
+    }
+
+    /**
+     * Publishes the queue depths and counters of the vrouter's queues to the
+     * metrics service, listed by vrouter-metrics and the metrics resource.
+     */
+    private void registerGauges() {
+        gauge("route-events.received", routePipeline::eventsReceived);
+        gauge("route-events.applied", routePipeline::eventsApplied);
+        gauge("route-events.coalescing-ratio", routePipeline::coalescingRatio);
+        gauge("route-events.queue-depth", routePipeline::queueDepth);
+        gauge("route-events.max-queue-depth", routePipeline::maxQueueDepth);
+        gauge("route-events.batches", routePipeline::batches);
+        gauge("route-events.avg-batch-ns", routePipeline::averageBatchNanos);
+        gauge("route-events.max-batch-ns", routePipeline::maxBatchNanos);
+        gauge("route-events.last-batch-ns", routePipeline::lastBatchNanos);
+        gauge("intent-batch.received", intentBatcher::received);
+        gauge("intent-batch.duplicates", intentBatcher::duplicates);
+        gauge("intent-batch.submitted", intentBatcher::submitted);
+        gauge("intent-batch.failed", intentBatcher::failed);
+        gauge("intent-batch.queue-depth", intentBatcher::queueDepth);
+        gauge("intent-batch.batches", intentBatcher::batches);
+        gauge("intent-batch.avg-batch-size", intentBatcher::averageBatchSize);
+        gauge("intent-batch.max-batch-size", intentBatcher::maxBatchSize);
+        gauge("intent-batch.installed", intentBatcher::installed);
+        gauge("intent-batch.avg-install-ns", intentBatcher::averageInstallNanos);
+        gauge("intent-batch.max-install-ns", intentBatcher::maxInstallNanos);
+        gauge("packet-dispatch.workers", dispatcher::workers);
+        gauge("packet-dispatch.dispatched", dispatcher::dispatched);
+        gauge("packet-dispatch.dropped", dispatcher::dropped);
+        gauge("packet-dispatch.queue-depth", dispatcher::queueDepth);
+        gauge("packet-dispatch.max-queue-depth", dispatcher::maxQueueDepth);
+    }
+
+    private void gauge(String name, Supplier<? extends Number> value) {
+        metricsService.registerGauge(name, value);
+        gaugeNames.add(name);
+    }
+
+    private void unregisterGauges() {
+        gaugeNames.forEach(metricsService::unregisterGauge);
+        gaugeNames.clear();
+    }
+
+    /**
+     * Takes a new snapshot of the edge ports. Synchronized so a snapshot
+     * taken earlier never overwrites a later one.
+     */
+    private synchronized void refreshEdgePorts() {
+        edgePorts = EdgePorts.of(edgePortService.getEdgePoints());
+    }
 
+    // ===== Keep the edge port snapshot current =====
+    private class InternalEdgePortListener implements EdgePortListener {
+        @Override
+        public void event(EdgePortEvent event) {
+            refreshEdgePorts();
+            // The aggregate intents take traffic from every edge port
+            routeIntents.forEach(AppComponent.this::submitRouteIntent);
+        }
+    }
+
+    // ===== Rebuild the classifier table when interfaces change =====
+    private class InternalInterfaceListener implements InterfaceListener {
+        @Override
+        public void event(InterfaceEvent event) {
+            RouterConfig cfg = routerConfig;
+            if (cfg != null) {
+                classifier = new PacketClassifier(cfg, interfaceService.getInterfaces(), fib);
             }
         }
+    }
 
+    // ===== Drop the MAC table of a switch that went away =====
+    private class InternalDeviceListener implements DeviceListener {
+        @Override
+        public boolean isRelevant(DeviceEvent event) {
+            return event.type() == DeviceEvent.Type.DEVICE_REMOVED;
+        }
+
+        @Override
+        public void event(DeviceEvent event) {
+            macTable.removeDevice(event.subject().id());
+        }
+    }
+
+    // ===== Forget direct rules the switch timed out =====
+    private class InternalFlowRuleListener implements FlowRuleListener {
+        @Override
+        public boolean isRelevant(FlowRuleEvent event) {
+            return event.type() == FlowRuleEvent.Type.RULE_REMOVED && event.subject().appId() == appId.id();
+        }
+
+        @Override
+        public void event(FlowRuleEvent event) {
+            directRules.remove(event.subject().id());
+        }
+    }
+
+    private class InternalIntentListener implements IntentListener {
+        @Override
+        public boolean isRelevant(IntentEvent event) {
+            return appId.equals(event.subject().appId());
+        }
+
+        @Override
+        public void event(IntentEvent event) {
+            intentIndex.update(event);
+            switch (event.type()) {
+                case INSTALLED:
+                    intentBatcher.installed(event.subject().key());
+                    break;
+                case FAILED:
+                case WITHDRAWN:
+                case PURGED:
+                    intentBatcher.forget(event.subject().key());
+                    break;
+                default:
+                    break;
+            }
+        }
     }
 
     // ===== Tool Functions =====
+    protected void installRule(DeviceId deviceId, TrafficSelector selector, TrafficTreatment treatment,
+            int priority) {
+        long start = System.nanoTime();
+        FlowRule flowRule = DefaultFlowRule.builder()
+                .withSelector(selector)
+                .withTreatment(treatment)
+                .withPriority(priority)
+                .makeTemporary(FLOW_IDLE_TIMEOUT)
+                .forDevice(deviceId)
+                .fromApp(appId)
+                .build();
+
+        directRules.put(flowRule.id(), flowRule);
+        flowRuleService.applyFlowRules(flowRule);
+        metricsService.record(ProcessingStage.INTENT_SUBMIT, System.nanoTime() - start);
+    }
+
     protected void installIntent(ConnectPoint ingressPoint, ConnectPoint egressPoint, TrafficSelector selector,
             TrafficTreatment treatment, int priority) {
-
-        Key intentKey = Key.of(
-                String.join(":",
-                        ingressPoint != null ? String.valueOf(ingressPoint.hashCode()) : "0",
-                        egressPoint != null ? String.valueOf(egressPoint.hashCode()) : "0",
-                        selector != null ? String.valueOf(selector.hashCode()) : "0",
-                        treatment != null ? String.valueOf(treatment.hashCode()) : "0"),
-                appId);
-        Intent existIntent = intentService.getIntent(intentKey);
-        if (existIntent == null) {
+        long start = System.nanoTime();
+        IntentIndex.FlowKey flow = new IntentIndex.FlowKey("p2p", ingressPoint, egressPoint,
+                selector, treatment, priority);
+        Key intentKey = intentIndex.claim(flow, appId);
+        if (intentKey != null) {
             PointToPointIntent.Builder intent = PointToPointIntent.builder()
                     .appId(appId)
                     .priority(priority)
@@ -643,141 +846,132 @@ public class AppComponent {
             if (treatment != null)
                 intent.treatment(treatment);
 
-            intentService.submit(intent.build());
-            log.info("Intent `{}`, port `{}` => `{}`, port `{}` is submitted.",
+            intentBatcher.submit(ingressPoint.deviceId(), intent.build());
+            log.debug("Intent `{}`, port `{}` => `{}`, port `{}` is submitted.",
                     ingressPoint.deviceId(), ingressPoint.port(),
                     egressPoint.deviceId(), egressPoint.port());
         } else {
-            log.info("Intent `{}`, port `{}` => `{}`, port `{}` already exists.",
+            log.debug("Intent `{}`, port `{}` => `{}`, port `{}` already exists.",
                     ingressPoint.deviceId(), ingressPoint.port(),
                     egressPoint.deviceId(), egressPoint.port());
         }
+        metricsService.record(ProcessingStage.INTENT_SUBMIT, System.nanoTime() - start);
     }
 
-    protected void withdrawPointToPointIntent() {
-        for (Intent intent : intentService.getIntentsByAppId(appId)) {
-            if (intent instanceof PointToPointIntent) {
-                intentService.withdraw(intent);
+    /**
+     * Submits the aggregate intent of a route from the current edge ports,
+     * replacing the one already submitted for the prefix.
+     */
+    private void submitRouteIntent(IpPrefix prefix, RouteIntent routeIntent) {
+        Set<FilteredConnectPoint> ingressPoints = new HashSet<>();
+        for (ConnectPoint cp : edgePorts.points()) {
+            if (!cp.equals(routeIntent.egress)) {
+                ingressPoints.add(new FilteredConnectPoint(cp));
             }
         }
+        if (ingressPoints.isEmpty()) {
+            log.debug("No edge port left for the route intent of {}", prefix);
+            return;
+        }
+
+        try {
+            submitMultiIntent(routeIntent.key, ingressPoints, routeIntent.egress,
+                    routeIntent.selector, routeIntent.treatment, 25);
+        } catch (Exception e) {
+            // Let the next packet-in of the prefix try again
+            routeIntents.remove(prefix, routeIntent);
+            log.error("Failed to submit the route intent of {}", prefix, e);
+        }
     }
 
-    protected void installMultiIntent(Set<FilteredConnectPoint> ingressPoints,
-            ConnectPoint egressPoint,
-            TrafficSelector selector,
-            TrafficTreatment.Builder treatment) {
-        Key intentKey = Key.of(
-                String.join(":",
-                        egressPoint != null ? String.valueOf(egressPoint.hashCode()) : "0",
-                        selector != null ? String.valueOf(selector.hashCode()) : "0",
-                        treatment != null ? String.valueOf(treatment.hashCode()) : "0"),
-                appId);
-
-        Intent existIntent = intentService.getIntent(intentKey);
-
-        if (existIntent != null) {
-            log.info("Intent `{}` => `{}` already exists.",
-                    ingressPoints,
-                    egressPoint);
+    private void withdrawRouteIntent(IpPrefix prefix) {
+        RouteIntent routeIntent = routeIntents.remove(prefix);
+        if (routeIntent == null) {
             return;
         }
+        Intent intent = intentService.getIntent(routeIntent.key);
+        if (intent != null) {
+            intentService.withdraw(intent);
+            log.debug("Route intent of {} is withdrawn.", prefix);
+        }
+    }
+
+    /**
+     * Content of a route's aggregate intent, without its ingress points.
+     */
+    private static final class RouteIntent {
+        final Key key;
+        final ConnectPoint egress;
+        final TrafficSelector selector;
+        final TrafficTreatment treatment;
+
+        RouteIntent(Key key, ConnectPoint egress, TrafficSelector selector, TrafficTreatment treatment) {
+            this.key = key;
+            this.egress = egress;
+            this.selector = selector;
+            this.treatment = treatment;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof RouteIntent)) {
+                return false;
+            }
+            RouteIntent other = (RouteIntent) obj;
+            return key.equals(other.key) && egress.equals(other.egress)
+                    && selector.equals(other.selector) && treatment.equals(other.treatment);
+        }
 
+        @Override
+        public int hashCode() {
+            return Objects.hash(key, egress, selector, treatment);
+        }
+    }
+
+    /**
+     * Submits a multi-point intent under the given key, replacing any intent
+     * already submitted with that key.
+     */
+    protected void submitMultiIntent(Key intentKey,
+            Set<FilteredConnectPoint> ingressPoints,
+            ConnectPoint egressPoint,
+            TrafficSelector selector,
+            TrafficTreatment treatment,
+            int priority) {
+        intentService.submit(buildMultiIntent(intentKey, ingressPoints, egressPoint, selector, treatment, priority));
+        log.debug("MultiIntent `{}` => `{}` is submitted.",
+                ingressPoints,
+                egressPoint);
+    }
+
+    private MultiPointToSinglePointIntent buildMultiIntent(Key intentKey,
+            Set<FilteredConnectPoint> ingressPoints,
+            ConnectPoint egressPoint,
+            TrafficSelector selector,
+            TrafficTreatment treatment,
+            int priority) {
         MultiPointToSinglePointIntent.Builder intent = MultiPointToSinglePointIntent.builder()
                 .appId(appId)
-                .priority(15)
+                .priority(priority)
                 .filteredIngressPoints(ingressPoints)
                 .filteredEgressPoint(new FilteredConnectPoint(egressPoint))
                 .key(intentKey)
                 .selector(selector);
 
         if (treatment != null)
-            intent.treatment(treatment.build());
-
-        intentService.submit(intent.build());
-        log.info("MultiIntent `{}` => `{}` is submitted.",
-                ingressPoints,
-                egressPoint);
-
-    }
+            intent.treatment(treatment);
 
-    protected void withdrawMultiPointToSinglePointIntent() {
-        for (Intent intent : intentService.getIntentsByAppId(appId)) {
-            if (intent instanceof MultiPointToSinglePointIntent) {
-                intentService.withdraw(intent);
-            }
-        }
-    }
-
-    protected Host getHost(IpAddress ip) {
-        Host returnHost = null;
-        hostService.requestMac(ip);
-        for (Host host : hostService.getHostsByIp(ip)) {
-            returnHost = host;
-        }
-        return returnHost;
-    }
-
-    protected void floodNdp(Ip6Address targetIp) {
-        NeighborSolicitation ns = new NeighborSolicitation()
-                .setTargetAddress(targetIp.toOctets())
-                .addOption(NeighborDiscoveryOptions.TYPE_SOURCE_LL_ADDRESS, gatewayMac.toBytes());
-
-        Ethernet ethPkt = new Ethernet();
-        ethPkt.setEtherType(Ethernet.TYPE_IPV6);
-        ethPkt.setDestinationMACAddress(MacAddress.IPV6_MULTICAST);
-        ethPkt.setSourceMACAddress(gatewayMac);
-        ethPkt.setPayload(new IPv6()
-                .setDestinationAddress(Ip6Address.valueOf("ff02::1").toOctets())
-                .setSourceAddress(gatewayIp6.toOctets())
-                .setNextHeader(IPv6.PROTOCOL_ICMP6)
-                .setHopLimit((byte) 255)
-                .setPayload(new ICMP6()
-                        .setIcmpType(ICMP6.NEIGHBOR_SOLICITATION)
-                        .setIcmpCode((byte) 0)
-                        .setPayload(ns)));
-        ByteBuffer bpacket = ByteBuffer.wrap(ethPkt.serialize());
-        List<ConnectPoint> edgePoints = Lists.newArrayList(edgePortService.getEdgePoints());
-        for (ConnectPoint point : edgePoints) {
-            TrafficTreatment treatment = DefaultTrafficTreatment.builder()
-                    .setOutput(point.port())
-                    .setEthSrc(frrMac)
-                    .build();
-            OutboundPacket outpacket = new DefaultOutboundPacket(point.deviceId(),
-                    treatment,
-                    bpacket);
-            packetService.emit(outpacket);
-        }
+        return intent.build();
     }
 
-    protected void floodArp(Ip4Address targetIp) {
-        ARP arpRequest = new ARP();
-        arpRequest.setHardwareType(ARP.HW_TYPE_ETHERNET)
-                .setProtocolType(ARP.PROTO_TYPE_IP)
-                .setHardwareAddressLength((byte) Ethernet.DATALAYER_ADDRESS_LENGTH)
-                .setProtocolAddressLength((byte) 4)
-                .setOpCode(ARP.OP_REQUEST)
-                .setSenderHardwareAddress(gatewayMac.toBytes())
-                .setSenderProtocolAddress(gatewayIp4.toInt())
-                .setTargetHardwareAddress(MacAddress.BROADCAST.toBytes())
-                .setTargetProtocolAddress(targetIp.toInt());
-
-        Ethernet ethPkt = new Ethernet();
-        ethPkt.setEtherType(Ethernet.TYPE_ARP)
-                .setSourceMACAddress(gatewayMac)
-                .setDestinationMACAddress(MacAddress.BROADCAST)
-                .setPayload(arpRequest);
-        ByteBuffer bpacket = ByteBuffer.wrap(ethPkt.serialize());
-        List<ConnectPoint> edgePoints = Lists.newArrayList(edgePortService.getEdgePoints());
-        for (ConnectPoint point : edgePoints) {
-            TrafficTreatment treatment = DefaultTrafficTreatment.builder()
-                    .setOutput(point.port())
-                    .setEthSrc(frrMac)
-                    .build();
-            OutboundPacket outpacket = new DefaultOutboundPacket(point.deviceId(),
-                    treatment,
-                    bpacket);
-            packetService.emit(outpacket);
-        }
+    protected HostBinding getHost(IpAddress ip) {
+        long start = System.nanoTime();
+        HostBinding binding = hostIndexService.lookup(ip);
+        metricsService.record(ProcessingStage.HOST_LOOKUP, System.nanoTime() - start);
+        return binding;
     }
 
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.TrafficTreatment;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the edge ports, grouped by device.
+ *
+ * A new snapshot is built whenever the edge ports change and published
+ * through a volatile reference, so flooding walks precomputed arrays
+ * instead of asking the edge port service for a fresh copy each time.
+ * The treatment sending a frame out of all edge ports of a device is
+ * built along with the snapshot.
+ */
+public final class EdgePorts {
+
+    public static final EdgePorts EMPTY = of(ImmutableList.of());
+
+    private final List<ConnectPoint> points;
+    private final DeviceId[] devices;
+    private final PortNumber[][] ports;
+    private final TrafficTreatment[] floods;
+
+    private EdgePorts(Map<DeviceId, List<PortNumber>> byDevice) {
+        ImmutableList.Builder<ConnectPoint> all = ImmutableList.builder();
+        devices = new DeviceId[byDevice.size()];
+        ports = new PortNumber[byDevice.size()][];
+        floods = new TrafficTreatment[byDevice.size()];
+
+        int i = 0;
+        for (Map.Entry<DeviceId, List<PortNumber>> entry : byDevice.entrySet()) {
+            devices[i] = entry.getKey();
+            ports[i] = entry.getValue().toArray(new PortNumber[0]);
+            TrafficTreatment.Builder flood = DefaultTrafficTreatment.builder();
+            for (PortNumber port : ports[i]) {
+                all.add(new ConnectPoint(devices[i], port));
+                flood.setOutput(port);
+            }
+            floods[i] = flood.build();
+            i++;
+        }
+        points = all.build();
+    }
+
+    /**
+     * Builds a snapshot of the given edge ports.
+     */
+    public static EdgePorts of(Iterable<ConnectPoint> edgePoints) {
+        Map<DeviceId, List<PortNumber>> byDevice = new LinkedHashMap<>();
+        for (ConnectPoint point : edgePoints) {
+            byDevice.computeIfAbsent(point.deviceId(), id -> new ArrayList<>()).add(point.port());
+        }
+        return new EdgePorts(byDevice);
+    }
+
+    /**
+     * Returns all edge ports.
+     */
+    public List<ConnectPoint> points() {
+        return points;
+    }
+
+    public int deviceCount() {
+        return devices.length;
+    }
+
+    public DeviceId device(int index) {
+        return devices[index];
+    }
+
+    /**
+     * Returns a treatment sending a frame out of the edge ports of a
+     * device, except the given one.
+     *
+     * @param except port to leave out, may be null or not an edge port
+     * @return the treatment, null if the device has no other edge port
+     */
+    public TrafficTreatment flood(int index, PortNumber except) {
+        PortNumber[] out = ports[index];
+        int skip = -1;
+        for (int i = 0; except != null && i < out.length; i++) {
+            if (out[i].equals(except)) {
+                skip = i;
+                break;
+            }
+        }
+        if (skip < 0) {
+            return floods[index];
+        }
+        if (out.length == 1) {
+            return null;
+        }
+        TrafficTreatment.Builder flood = DefaultTrafficTreatment.builder();
+        for (int i = 0; i < out.length; i++) {
+            if (i != skip) {
+                flood.setOutput(out[i]);
+            }
+        }
+        return flood.build();
+    }
+}
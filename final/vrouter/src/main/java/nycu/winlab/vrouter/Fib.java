@@ -0,0 +1,293 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.IpPrefix;
+
+/**
+ * Local forwarding information base.
+ *
+ * Routes are kept in two path-compressed binary tries, one per address
+ * family. Keys are primitive: an IPv4 address is an int and an IPv6 address
+ * is a pair of longs, so a lookup from the packet-in path does not box any
+ * address object. Nodes are immutable and updates copy the path from the
+ * root, which lets readers walk the trie without locking while a single
+ * writer applies route events.
+ */
+public class Fib<V> {
+
+    private static final int IP4_MAX_LENGTH = 32;
+    private static final int IP6_MAX_LENGTH = 128;
+
+    private volatile Node<V> root4;
+    private volatile Node<V> root6;
+    private volatile int size;
+
+    /**
+     * Adds or replaces the entry of an IP prefix.
+     */
+    public synchronized void put(IpPrefix prefix, V value) {
+        if (prefix.isIp4()) {
+            put4(prefix.address().getIp4Address().toInt(), prefix.prefixLength(), value);
+        } else {
+            byte[] octets = prefix.address().toOctets();
+            put6(toLong(octets, 0), toLong(octets, 8), prefix.prefixLength(), value);
+        }
+    }
+
+    /**
+     * Removes the entry of an IP prefix.
+     */
+    public synchronized void remove(IpPrefix prefix) {
+        if (prefix.isIp4()) {
+            remove4(prefix.address().getIp4Address().toInt(), prefix.prefixLength());
+        } else {
+            byte[] octets = prefix.address().toOctets();
+            remove6(toLong(octets, 0), toLong(octets, 8), prefix.prefixLength());
+        }
+    }
+
+    /**
+     * Returns the longest prefix match of an IP address, or null.
+     */
+    public V lookup(IpAddress ip) {
+        if (ip.isIp4()) {
+            return lookup4(ip.getIp4Address().toInt());
+        }
+        byte[] octets = ip.toOctets();
+        return lookup6(toLong(octets, 0), toLong(octets, 8));
+    }
+
+    public synchronized void put4(int address, int length, V value) {
+        checkLength(length, IP4_MAX_LENGTH);
+        root4 = insert(root4, mask(hi4(address), length), 0, length, value);
+    }
+
+    public synchronized void put6(long hi, long lo, int length, V value) {
+        checkLength(length, IP6_MAX_LENGTH);
+        root6 = insert(root6, mask(hi, length), mask(lo, length - 64), length, value);
+    }
+
+    public synchronized void remove4(int address, int length) {
+        checkLength(length, IP4_MAX_LENGTH);
+        root4 = delete(root4, mask(hi4(address), length), 0, length);
+    }
+
+    public synchronized void remove6(long hi, long lo, int length) {
+        checkLength(length, IP6_MAX_LENGTH);
+        root6 = delete(root6, mask(hi, length), mask(lo, length - 64), length);
+    }
+
+    public V lookup4(int address) {
+        return match(root4, hi4(address), 0);
+    }
+
+    /**
+     * Looks up the IPv6 address given by its 16 octets, as found in an
+     * IPv6 header.
+     */
+    public V lookup6(byte[] octets) {
+        return match(root6, toLong(octets, 0), toLong(octets, 8));
+    }
+
+    public V lookup6(long hi, long lo) {
+        return match(root6, hi, lo);
+    }
+
+    public synchronized void clear() {
+        root4 = null;
+        root6 = null;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Reads eight octets as a big-endian long.
+     */
+    static long toLong(byte[] octets, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (octets[i] & 0xffL);
+        }
+        return value;
+    }
+
+    private static void checkLength(int length, int max) {
+        if (length < 0 || length > max) {
+            throw new IllegalArgumentException("Invalid prefix length " + length);
+        }
+    }
+
+    private static long hi4(int address) {
+        return ((long) address) << 32;
+    }
+
+    // Keeps the leading `length` bits of a 64-bit word
+    private static long mask(long word, int length) {
+        if (length <= 0) {
+            return 0;
+        }
+        if (length >= 64) {
+            return word;
+        }
+        return word & (-1L << (64 - length));
+    }
+
+    private static int bitAt(long hi, long lo, int index) {
+        if (index < 64) {
+            return (int) (hi >>> (63 - index)) & 1;
+        }
+        return (int) (lo >>> (127 - index)) & 1;
+    }
+
+    private static int commonLength(long hi1, long lo1, long hi2, long lo2) {
+        long diff = hi1 ^ hi2;
+        if (diff != 0) {
+            return Long.numberOfLeadingZeros(diff);
+        }
+        diff = lo1 ^ lo2;
+        if (diff != 0) {
+            return 64 + Long.numberOfLeadingZeros(diff);
+        }
+        return IP6_MAX_LENGTH;
+    }
+
+    private V match(Node<V> node, long hi, long lo) {
+        V best = null;
+        while (node != null) {
+            if (commonLength(node.hi, node.lo, hi, lo) < node.length) {
+                break;
+            }
+            if (node.value != null) {
+                best = node.value;
+            }
+            if (node.length == IP6_MAX_LENGTH) {
+                break;
+            }
+            node = bitAt(hi, lo, node.length) == 0 ? node.left : node.right;
+        }
+        return best;
+    }
+
+    private Node<V> insert(Node<V> node, long hi, long lo, int length, V value) {
+        if (node == null) {
+            size++;
+            return new Node<>(hi, lo, length, value, null, null);
+        }
+
+        int common = Math.min(commonLength(node.hi, node.lo, hi, lo), Math.min(node.length, length));
+        if (common == node.length && common == length) {
+            if (node.value == null) {
+                size++;
+            }
+            return new Node<>(node.hi, node.lo, length, value, node.left, node.right);
+        }
+        if (common == node.length) {
+            // The new prefix lies below this node
+            if (bitAt(hi, lo, common) == 0) {
+                return new Node<>(node.hi, node.lo, node.length, node.value,
+                        insert(node.left, hi, lo, length, value), node.right);
+            }
+            return new Node<>(node.hi, node.lo, node.length, node.value,
+                    node.left, insert(node.right, hi, lo, length, value));
+        }
+
+        size++;
+        if (common == length) {
+            // The new prefix covers this node
+            if (bitAt(node.hi, node.lo, common) == 0) {
+                return new Node<>(hi, lo, length, value, node, null);
+            }
+            return new Node<>(hi, lo, length, value, null, node);
+        }
+
+        // The prefixes diverge, join them under a glue node
+        Node<V> leaf = new Node<>(hi, lo, length, value, null, null);
+        long glueHi = mask(hi, common);
+        long glueLo = mask(lo, common - 64);
+        if (bitAt(hi, lo, common) == 0) {
+            return new Node<>(glueHi, glueLo, common, null, leaf, node);
+        }
+        return new Node<>(glueHi, glueLo, common, null, node, leaf);
+    }
+
+    private Node<V> delete(Node<V> node, long hi, long lo, int length) {
+        if (node == null || node.length > length
+                || commonLength(node.hi, node.lo, hi, lo) < node.length) {
+            return node;
+        }
+
+        if (node.length == length) {
+            if (node.value == null) {
+                return node;
+            }
+            size--;
+            return collapse(new Node<>(node.hi, node.lo, node.length, null, node.left, node.right));
+        }
+
+        Node<V> updated;
+        if (bitAt(hi, lo, node.length) == 0) {
+            Node<V> left = delete(node.left, hi, lo, length);
+            if (left == node.left) {
+                return node;
+            }
+            updated = new Node<>(node.hi, node.lo, node.length, node.value, left, node.right);
+        } else {
+            Node<V> right = delete(node.right, hi, lo, length);
+            if (right == node.right) {
+                return node;
+            }
+            updated = new Node<>(node.hi, node.lo, node.length, node.value, node.left, right);
+        }
+        return collapse(updated);
+    }
+
+    // Drops glue nodes that no longer join two branches
+    private Node<V> collapse(Node<V> node) {
+        if (node.value != null) {
+            return node;
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        return node;
+    }
+
+    private static final class Node<V> {
+        final long hi;
+        final long lo;
+        final int length;
+        final V value;
+        final Node<V> left;
+        final Node<V> right;
+
+        Node(long hi, long lo, int length, V value, Node<V> left, Node<V> right) {
+            this.hi = hi;
+            this.lo = lo;
+            this.length = length;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+        }
+    }
+}
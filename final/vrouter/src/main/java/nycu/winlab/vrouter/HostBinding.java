@@ -0,0 +1,65 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.ConnectPoint;
+
+import java.util.Objects;
+
+/**
+ * Where an IP address lives, its MAC address and attachment point.
+ */
+public final class HostBinding {
+
+    private final MacAddress mac;
+    private final ConnectPoint location;
+
+    public HostBinding(MacAddress mac, ConnectPoint location) {
+        this.mac = mac;
+        this.location = location;
+    }
+
+    public MacAddress mac() {
+        return mac;
+    }
+
+    public ConnectPoint location() {
+        return location;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof HostBinding)) {
+            return false;
+        }
+        HostBinding other = (HostBinding) obj;
+        return mac.equals(other.mac) && location.equals(other.location);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mac, location);
+    }
+
+    @Override
+    public String toString() {
+        return mac + "@" + location;
+    }
+}
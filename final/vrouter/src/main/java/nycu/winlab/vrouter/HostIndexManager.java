@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import org.onlab.packet.IpAddress;
+import org.onosproject.net.Host;
+import org.onosproject.net.host.HostEvent;
+import org.onosproject.net.host.HostListener;
+import org.onosproject.net.host.HostService;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps an IP to host binding index in sync with the host service, so a
+ * lookup is a single map read instead of a scan of getHostsByIp.
+ */
+@Component(immediate = true, service = HostIndexService.class)
+public class HostIndexManager implements HostIndexService {
+
+    private final Logger log = LoggerFactory.getLogger("vrouter");
+    private final InternalHostListener hostListener = new InternalHostListener();
+    private final ConcurrentMap<IpAddress, HostBinding> index = new ConcurrentHashMap<>();
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    protected HostService hostService;
+
+    @Activate
+    protected void activate() {
+        hostService.addListener(hostListener);
+        for (Host host : hostService.getHosts()) {
+            add(host);
+        }
+        log.info("Host index started with {} addresses", index.size());
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        hostService.removeListener(hostListener);
+        index.clear();
+        log.info("Host index stopped");
+    }
+
+    @Override
+    public HostBinding lookup(IpAddress ip) {
+        return index.get(ip);
+    }
+
+    @Override
+    public Map<IpAddress, HostBinding> bindings() {
+        return ImmutableMap.copyOf(index);
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    private void add(Host host) {
+        HostBinding binding = new HostBinding(host.mac(), host.location());
+        for (IpAddress ip : host.ipAddresses()) {
+            index.put(ip, binding);
+        }
+    }
+
+    // Only drops addresses still bound to this host, another host may own them by now
+    private void remove(Host host) {
+        for (IpAddress ip : host.ipAddresses()) {
+            index.computeIfPresent(ip, (key, binding) -> binding.mac().equals(host.mac()) ? null : binding);
+        }
+    }
+
+    private class InternalHostListener implements HostListener {
+        @Override
+        public void event(HostEvent event) {
+            switch (event.type()) {
+                case HOST_ADDED:
+                    add(event.subject());
+                    break;
+                case HOST_UPDATED:
+                case HOST_MOVED:
+                    if (event.prevSubject() != null) {
+                        remove(event.prevSubject());
+                    }
+                    add(event.subject());
+                    break;
+                case HOST_REMOVED:
+                    remove(event.subject());
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import org.onlab.packet.IpAddress;
+
+import java.util.Map;
+
+/**
+ * Read-only index of hosts by IP address.
+ */
+public interface HostIndexService {
+
+    /**
+     * Returns the binding of an IP address, or null if no host has it.
+     *
+     * @param ip IP address
+     * @return MAC address and location of the host
+     */
+    HostBinding lookup(IpAddress ip);
+
+    /**
+     * Returns a copy of all bindings.
+     *
+     * @return bindings keyed by IP address
+     */
+    Map<IpAddress, HostBinding> bindings();
+
+    /**
+     * Returns the number of indexed IP addresses.
+     *
+     * @return index size
+     */
+    int size();
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import static org.onlab.util.Tools.groupedThreads;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.intent.Intent;
+import org.onosproject.net.intent.IntentService;
+import org.onosproject.net.intent.Key;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Collects reactive intent submissions and hands them to the intent service
+ * in batches.
+ *
+ * Submissions are grouped per device. A group is flushed once it holds the
+ * flush size, or after the flush delay counted from its first submission.
+ * Within a group only the latest intent of each key is kept. The intent
+ * service has no bulk submit, so a batch is submitted back to back from a
+ * dedicated thread, off the packet processing path. An intent the service
+ * refuses is handed to the failure callback, so its claim can be released.
+ */
+public class IntentBatcher {
+
+    public static final int DEFAULT_FLUSH_SIZE = 32;
+    public static final long DEFAULT_FLUSH_DELAY_MS = 20;
+
+    // Bounds the submissions waiting for their install event
+    private static final int MAX_TRACKED = 4096;
+
+    private final Logger log = LoggerFactory.getLogger("vrouter");
+    private final IntentService intentService;
+    private final Consumer<Key> onFailure;
+
+    private final Map<DeviceId, Map<Key, Intent>> pending = new HashMap<>();
+    private final ConcurrentMap<Key, Long> requested = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor;
+    private volatile int flushSize = DEFAULT_FLUSH_SIZE;
+    private volatile long flushDelayMs = DEFAULT_FLUSH_DELAY_MS;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final AtomicLong installed = new AtomicLong();
+    private final AtomicLong totalInstallNanos = new AtomicLong();
+    private final AtomicLong maxInstallNanos = new AtomicLong();
+
+    public IntentBatcher(IntentService intentService, Consumer<Key> onFailure) {
+        this.intentService = intentService;
+        this.onFailure = onFailure;
+    }
+
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(
+                groupedThreads("vrouter", "intent-batch-%d", log));
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+        executor = null;
+        synchronized (this) {
+            pending.clear();
+        }
+        requested.clear();
+    }
+
+    /**
+     * Sets the number of intents that triggers a flush and the longest time
+     * a submission waits for its batch.
+     */
+    public void configure(int flushSize, long flushDelayMs) {
+        this.flushSize = Math.max(1, flushSize);
+        this.flushDelayMs = Math.max(0, flushDelayMs);
+    }
+
+    /**
+     * Queues an intent in the batch of a device, replacing any queued intent
+     * with the same key.
+     */
+    public void submit(DeviceId deviceId, Intent intent) {
+        received.incrementAndGet();
+        if (requested.size() < MAX_TRACKED) {
+            requested.putIfAbsent(intent.key(), System.nanoTime());
+        }
+
+        Map<Key, Intent> batch;
+        boolean first = false;
+        boolean full = false;
+        synchronized (this) {
+            batch = pending.get(deviceId);
+            if (batch == null) {
+                batch = new LinkedHashMap<>();
+                pending.put(deviceId, batch);
+                first = true;
+            }
+            if (batch.put(intent.key(), intent) != null) {
+                duplicates.incrementAndGet();
+            }
+            if (batch.size() >= flushSize) {
+                pending.remove(deviceId);
+                full = true;
+            }
+        }
+
+        ScheduledExecutorService exec = executor;
+        if (exec == null) {
+            return;
+        }
+        Map<Key, Intent> scheduled = batch;
+        if (full) {
+            exec.execute(() -> apply(scheduled.values()));
+        } else if (first) {
+            exec.schedule(() -> flush(deviceId, scheduled), flushDelayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Records the end of an install started by a batched submission.
+     */
+    public void installed(Key key) {
+        Long start = requested.remove(key);
+        if (start == null) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        installed.incrementAndGet();
+        totalInstallNanos.addAndGet(elapsed);
+        maxInstallNanos.accumulateAndGet(elapsed, Math::max);
+    }
+
+    /**
+     * Stops waiting for the install of an intent that failed or went away.
+     */
+    public void forget(Key key) {
+        requested.remove(key);
+    }
+
+    // A batch already flushed because it filled up is no longer pending
+    private void flush(DeviceId deviceId, Map<Key, Intent> batch) {
+        synchronized (this) {
+            if (!pending.remove(deviceId, batch)) {
+                return;
+            }
+        }
+        apply(batch.values());
+    }
+
+    private void apply(Collection<Intent> batch) {
+        for (Intent intent : batch) {
+            try {
+                intentService.submit(intent);
+            } catch (Exception e) {
+                requested.remove(intent.key());
+                failed.incrementAndGet();
+                onFailure.accept(intent.key());
+                log.error("Failed to submit intent {}", intent.key(), e);
+            }
+        }
+        submitted.addAndGet(batch.size());
+        batches.incrementAndGet();
+        maxBatchSize.accumulateAndGet(batch.size(), Math::max);
+        log.debug("Submitted a batch of {} intents", batch.size());
+    }
+
+    public synchronized int queueDepth() {
+        int depth = 0;
+        for (Map<Key, Intent> batch : pending.values()) {
+            depth += batch.size();
+        }
+        return depth;
+    }
+
+    public long received() {
+        return received.get();
+    }
+
+    public long duplicates() {
+        return duplicates.get();
+    }
+
+    public long submitted() {
+        return submitted.get();
+    }
+
+    public long failed() {
+        return failed.get();
+    }
+
+    public long batches() {
+        return batches.get();
+    }
+
+    public double averageBatchSize() {
+        long count = batches.get();
+        return count == 0 ? 0 : (double) submitted.get() / count;
+    }
+
+    public long maxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    public long installed() {
+        return installed.get();
+    }
+
+    /**
+     * Returns the average time from a submission to its install event.
+     */
+    public long averageInstallNanos() {
+        long count = installed.get();
+        return count == 0 ? 0 : totalInstallNanos.get() / count;
+    }
+
+    public long maxInstallNanos() {
+        return maxInstallNanos.get();
+    }
+}
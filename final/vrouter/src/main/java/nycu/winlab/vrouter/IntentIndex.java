@@ -0,0 +1,206 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.flow.criteria.Criterion;
+import org.onosproject.net.flow.instructions.Instruction;
+import org.onosproject.net.intent.IntentEvent;
+import org.onosproject.net.intent.IntentState;
+import org.onosproject.net.intent.Key;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Local index of the reactive intents this application has submitted.
+ *
+ * Each intent is identified by a FlowKey built from its endpoints, selector,
+ * treatment and priority. Its intent Key is derived from the same content,
+ * so two different flows never share a key. A packet-in for a flow whose
+ * intent is still in flight or installed is absorbed here, without a read
+ * of the distributed intent store. States are fed from intent events. A
+ * failed intent may be claimed again, and a withdrawn one is forgotten.
+ */
+public class IntentIndex {
+
+    private final ConcurrentMap<FlowKey, Entry> byFlow = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Key, FlowKey> byKey = new ConcurrentHashMap<>();
+
+    /**
+     * Claims the submission of a flow's intent.
+     *
+     * @return the key to submit the intent with, or null if an intent for
+     *         the flow is already pending or installed
+     */
+    public Key claim(FlowKey flow, ApplicationId appId) {
+        Entry entry = byFlow.get(flow);
+        if (entry != null && !entry.retryable()) {
+            return null;
+        }
+
+        Entry created = new Entry(entry != null ? entry.key : flow.toKey(appId));
+        boolean won = entry == null
+                ? byFlow.putIfAbsent(flow, created) == null
+                : byFlow.replace(flow, entry, created);
+        if (!won) {
+            return null;
+        }
+        byKey.put(created.key, flow);
+        return created.key;
+    }
+
+    /**
+     * Tracks the state of an indexed intent.
+     */
+    public void update(IntentEvent event) {
+        FlowKey flow = byKey.get(event.subject().key());
+        if (flow == null) {
+            return;
+        }
+        Entry entry = byFlow.get(flow);
+        if (entry == null) {
+            return;
+        }
+
+        switch (event.type()) {
+            case INSTALLED:
+                entry.state = IntentState.INSTALLED;
+                break;
+            case FAILED:
+            case CORRUPT:
+                entry.state = IntentState.FAILED;
+                break;
+            case WITHDRAWN:
+            case PURGED:
+                byFlow.remove(flow, entry);
+                byKey.remove(entry.key, flow);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Releases the claim of an intent that never reached the intent service,
+     * so the next packet-in for the flow may claim it again.
+     */
+    public void release(Key key) {
+        FlowKey flow = byKey.remove(key);
+        if (flow != null) {
+            byFlow.computeIfPresent(flow, (k, entry) -> entry.key.equals(key) ? null : entry);
+        }
+    }
+
+    public IntentState state(FlowKey flow) {
+        Entry entry = byFlow.get(flow);
+        return entry == null ? null : entry.state;
+    }
+
+    public int size() {
+        return byFlow.size();
+    }
+
+    public void clear() {
+        byFlow.clear();
+        byKey.clear();
+    }
+
+    private static final class Entry {
+        final Key key;
+        volatile IntentState state = IntentState.INSTALL_REQ;
+
+        Entry(Key key) {
+            this.key = key;
+        }
+
+        boolean retryable() {
+            return state == IntentState.FAILED;
+        }
+    }
+
+    /**
+     * Content of a reactive intent, used to recognise duplicate packet-ins.
+     */
+    public static final class FlowKey {
+        private final String kind;
+        private final Object ingress;
+        private final Object egress;
+        private final TrafficSelector selector;
+        private final TrafficTreatment treatment;
+        private final int priority;
+        private final int hash;
+
+        public FlowKey(String kind, Object ingress, Object egress, TrafficSelector selector,
+                TrafficTreatment treatment, int priority) {
+            this.kind = kind;
+            this.ingress = ingress;
+            this.egress = egress;
+            this.selector = selector;
+            this.treatment = treatment;
+            this.priority = priority;
+            this.hash = Objects.hash(kind, ingress, egress, selector, treatment, priority);
+        }
+
+        /**
+         * Builds the intent key, a canonical rendering of the content.
+         * Criteria and instructions are listed in their stable order without
+         * the wrapping class names to keep the key short.
+         */
+        Key toKey(ApplicationId appId) {
+            StringBuilder sb = new StringBuilder(128);
+            sb.append(kind).append(':').append(priority).append(':')
+                    .append(ingress).append('>').append(egress).append('|');
+            if (selector != null) {
+                for (Criterion criterion : selector.criteria()) {
+                    sb.append(criterion).append(',');
+                }
+            }
+            sb.append('|');
+            if (treatment != null) {
+                for (Instruction instruction : treatment.allInstructions()) {
+                    sb.append(instruction).append(',');
+                }
+            }
+            return Key.of(sb.toString(), appId);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof FlowKey)) {
+                return false;
+            }
+            FlowKey other = (FlowKey) obj;
+            return hash == other.hash && priority == other.priority
+                    && kind.equals(other.kind)
+                    && Objects.equals(ingress, other.ingress)
+                    && Objects.equals(egress, other.egress)
+                    && Objects.equals(selector, other.selector)
+                    && Objects.equals(treatment, other.treatment);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+
+/**
+ * MAC learning table of the intra-domain bridge.
+ *
+ * Each device has its own open-addressing table keyed by the MAC address as
+ * a primitive long. Lookups are optimistic reads that take no lock in the
+ * common case. Entries idle for longer than the idle timeout are ignored
+ * and reclaimed, and a full table evicts its least recently seen entry.
+ */
+public class MacTable {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 300_000;
+
+    // Last-seen times are only rewritten when older than this, so a busy
+    // host does not take the write lock on every packet
+    private static final long REFRESH_MS = 1000;
+
+    private final ConcurrentMap<DeviceId, DeviceTable> devices = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+    private volatile long idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+
+    public MacTable() {
+        this(() -> System.nanoTime() / 1_000_000);
+    }
+
+    MacTable(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Sets the per-device size bound and the idle timeout. Changing the size
+     * bound drops what has been learned so far.
+     */
+    public void configure(int maxEntries, long idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+        if (this.maxEntries != maxEntries) {
+            this.maxEntries = Math.max(1, maxEntries);
+            devices.clear();
+        }
+    }
+
+    /**
+     * Learns that a MAC address is reachable through a port of a device.
+     *
+     * @return the port the MAC address was previously learned on if it has
+     *         moved, null otherwise
+     */
+    public PortNumber learn(DeviceId deviceId, MacAddress mac, PortNumber port) {
+        DeviceTable table = devices.computeIfAbsent(deviceId, id -> new DeviceTable(maxEntries));
+        return table.learn(key(mac), port, clock.getAsLong());
+    }
+
+    /**
+     * Returns the port a MAC address was learned on, or null if it is unknown
+     * or has been idle for too long.
+     */
+    public PortNumber lookup(DeviceId deviceId, MacAddress mac) {
+        DeviceTable table = devices.get(deviceId);
+        if (table == null) {
+            return null;
+        }
+        return table.lookup(key(mac), clock.getAsLong() - idleTimeoutMs);
+    }
+
+    public void removeDevice(DeviceId deviceId) {
+        devices.remove(deviceId);
+    }
+
+    public void clear() {
+        devices.clear();
+    }
+
+    public int size(DeviceId deviceId) {
+        DeviceTable table = devices.get(deviceId);
+        return table == null ? 0 : table.size();
+    }
+
+    // Tag bit above the 48 MAC bits keeps every key non-zero, zero marks a free slot
+    private static long key(MacAddress mac) {
+        return mac.toLong() | (1L << 48);
+    }
+
+    private final class DeviceTable {
+        private final StampedLock lock = new StampedLock();
+        private final int maxEntries;
+        private final long[] keys;
+        private final PortNumber[] ports;
+        private final long[] lastSeen;
+        private int size;
+
+        DeviceTable(int maxEntries) {
+            int capacity = Integer.highestOneBit(Math.max(2, maxEntries * 2 - 1)) << 1;
+            this.maxEntries = maxEntries;
+            this.keys = new long[capacity];
+            this.ports = new PortNumber[capacity];
+            this.lastSeen = new long[capacity];
+        }
+
+        PortNumber lookup(long key, long idleSince) {
+            long stamp = lock.tryOptimisticRead();
+            PortNumber port = find(key, idleSince);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    port = find(key, idleSince);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return port;
+        }
+
+        PortNumber learn(long key, PortNumber port, long now) {
+            // Nothing to write for a known host seen again on the same port
+            long stamp = lock.tryOptimisticRead();
+            int slot = slotOf(key);
+            boolean fresh = slot >= 0 && port.equals(ports[slot]) && now - lastSeen[slot] < REFRESH_MS;
+            if (lock.validate(stamp) && fresh) {
+                return null;
+            }
+
+            stamp = lock.writeLock();
+            try {
+                slot = slotOf(key);
+                if (slot >= 0) {
+                    PortNumber previous = ports[slot];
+                    ports[slot] = port;
+                    lastSeen[slot] = now;
+                    return previous.equals(port) ? null : previous;
+                }
+                if (size >= maxEntries) {
+                    evict(now);
+                }
+                insert(key, port, now);
+                return null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private PortNumber find(long key, long idleSince) {
+            int slot = slotOf(key);
+            if (slot < 0 || lastSeen[slot] < idleSince) {
+                return null;
+            }
+            return ports[slot];
+        }
+
+        private int slotOf(long key) {
+            int mask = keys.length - 1;
+            for (int i = home(key, mask), probes = 0; probes < keys.length; i = (i + 1) & mask, probes++) {
+                long k = keys[i];
+                if (k == key) {
+                    return i;
+                }
+                if (k == 0) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        private void insert(long key, PortNumber port, long now) {
+            int mask = keys.length - 1;
+            int i = home(key, mask);
+            while (keys[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            ports[i] = port;
+            lastSeen[i] = now;
+            size++;
+        }
+
+        // Reclaims idle entries, or the least recently seen one if none is idle
+        private void evict(long now) {
+            long idleSince = now - idleTimeoutMs;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0 && lastSeen[i] < idleSince) {
+                    remove(i);
+                    // The backward shift may have moved another entry into this slot
+                    i--;
+                }
+            }
+            if (size < maxEntries) {
+                return;
+            }
+
+            int oldest = -1;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0 && (oldest < 0 || lastSeen[i] < lastSeen[oldest])) {
+                    oldest = i;
+                }
+            }
+            remove(oldest);
+        }
+
+        // Linear-probing delete that shifts the following cluster back
+        private void remove(int slot) {
+            int mask = keys.length - 1;
+            int i = slot;
+            int j = slot;
+            while (true) {
+                j = (j + 1) & mask;
+                if (keys[j] == 0) {
+                    break;
+                }
+                int home = home(keys[j], mask);
+                boolean inRange = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                if (!inRange) {
+                    keys[i] = keys[j];
+                    ports[i] = ports[j];
+                    lastSeen[i] = lastSeen[j];
+                    i = j;
+                }
+            }
+            keys[i] = 0;
+            ports[i] = null;
+            lastSeen[i] = 0;
+            size--;
+        }
+
+        private int home(long key, int mask) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        }
+    }
+}
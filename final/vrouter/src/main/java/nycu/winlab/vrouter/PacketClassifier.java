@@ -0,0 +1,211 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.ICMP6;
+import org.onlab.packet.IPv4;
+import org.onlab.packet.IPv6;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.Ip6Address;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.TCP;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.host.InterfaceIpAddress;
+import org.onosproject.net.intf.Interface;
+import org.onosproject.routeservice.ResolvedRoute;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Set;
+
+/**
+ * Decides in one pass how the vrouter handles a packet-in.
+ *
+ * The headers are read once. The decision comes from a table built for each
+ * config or interface change, plus at most one FIB lookup on the destination.
+ * <ul>
+ * <li>ARP, NDP and BGP packets are control traffic.</li>
+ * <li>Frames not addressed to a router MAC, or addressed to the router's own
+ * interface addresses, stay in the intra domain.</li>
+ * <li>A routed destination makes the packet transit when it came in on a
+ * peering interface, and outbound otherwise.</li>
+ * <li>An unrouted destination reached from a peering interface is inbound.
+ * Anything else stays in the intra domain.</li>
+ * </ul>
+ */
+public final class PacketClassifier {
+
+    private static final int BGP_PORT = 179;
+
+    /**
+     * How a packet is handled.
+     */
+    public enum Decision {
+        INTRA,
+        INBOUND,
+        OUTBOUND,
+        TRANSIT,
+        CONTROL
+    }
+
+    private final long frrMac;
+    private final long gatewayMac;
+    private final Set<ConnectPoint> externalPoints;
+    private final Set<IpAddress> routerAddresses;
+    private final Fib<ResolvedRoute> fib;
+
+    public PacketClassifier(RouterConfig cfg, Iterable<Interface> interfaces, Fib<ResolvedRoute> fib) {
+        ImmutableSet.Builder<ConnectPoint> points = ImmutableSet.builder();
+        ImmutableSet.Builder<IpAddress> addresses = ImmutableSet.builder();
+        for (Interface intf : interfaces) {
+            points.add(intf.connectPoint());
+            for (InterfaceIpAddress ip : intf.ipAddressesList()) {
+                addresses.add(ip.ipAddress());
+            }
+        }
+        this.frrMac = cfg.frrMac().toLong();
+        this.gatewayMac = cfg.gatewayMac().toLong();
+        this.externalPoints = points.build();
+        this.routerAddresses = addresses.build();
+        this.fib = fib;
+    }
+
+    /**
+     * Classifies a parsed packet received on the given connect point.
+     */
+    public Classification classify(Ethernet ethPkt, ConnectPoint ingress) {
+        short etherType = ethPkt.getEtherType();
+        if (etherType == Ethernet.TYPE_ARP) {
+            return Classification.NEIGHBOR;
+        }
+
+        IpAddress dstIp;
+        boolean bgp;
+        if (etherType == Ethernet.TYPE_IPV4) {
+            IPv4 ipv4Packet = (IPv4) ethPkt.getPayload();
+            bgp = ipv4Packet.getProtocol() == IPv4.PROTOCOL_TCP && isBgp(ipv4Packet.getPayload());
+            dstIp = null;
+            if (!bgp && isRouterMac(ethPkt)) {
+                dstIp = Ip4Address.valueOf(ipv4Packet.getDestinationAddress());
+            }
+        } else if (etherType == Ethernet.TYPE_IPV6) {
+            IPv6 ipv6Packet = (IPv6) ethPkt.getPayload();
+            if (ipv6Packet.getNextHeader() == IPv6.PROTOCOL_ICMP6 && isNdp(ipv6Packet.getPayload())) {
+                return Classification.NEIGHBOR;
+            }
+            bgp = ipv6Packet.getNextHeader() == IPv6.PROTOCOL_TCP && isBgp(ipv6Packet.getPayload());
+            dstIp = null;
+            if (!bgp && isRouterMac(ethPkt)) {
+                dstIp = Ip6Address.valueOf(ipv6Packet.getDestinationAddress());
+            }
+        } else {
+            return Classification.INTRA;
+        }
+
+        if (bgp) {
+            return Classification.BGP;
+        }
+        if (dstIp == null || routerAddresses.contains(dstIp)) {
+            return Classification.INTRA;
+        }
+
+        boolean external = externalPoints.contains(ingress);
+        long start = System.nanoTime();
+        ResolvedRoute route = fib.lookup(dstIp);
+        long routeNanos = System.nanoTime() - start;
+        if (route != null) {
+            return new Classification(external ? Decision.TRANSIT : Decision.OUTBOUND, dstIp, route, routeNanos);
+        }
+        return new Classification(external ? Decision.INBOUND : Decision.INTRA, dstIp, null, routeNanos);
+    }
+
+    private boolean isRouterMac(Ethernet ethPkt) {
+        long dst = ethPkt.getDestinationMAC().toLong();
+        return dst == frrMac || dst == gatewayMac;
+    }
+
+    private static boolean isBgp(Object payload) {
+        if (!(payload instanceof TCP)) {
+            return false;
+        }
+        TCP tcp = (TCP) payload;
+        return tcp.getDestinationPort() == BGP_PORT || tcp.getSourcePort() == BGP_PORT;
+    }
+
+    private static boolean isNdp(Object payload) {
+        if (!(payload instanceof ICMP6)) {
+            return false;
+        }
+        int type = ((ICMP6) payload).getIcmpType() & 0xff;
+        return type >= (ICMP6.ROUTER_SOLICITATION & 0xff) && type <= (ICMP6.REDIRECT & 0xff);
+    }
+
+    /**
+     * Outcome of the classification of one packet.
+     */
+    public static final class Classification {
+        static final Classification INTRA = new Classification(Decision.INTRA, null, null, -1);
+        static final Classification NEIGHBOR = new Classification(Decision.CONTROL, null, null, -1);
+        static final Classification BGP = new Classification(Decision.CONTROL, null, null, -1);
+
+        private final Decision decision;
+        private final IpAddress dstIp;
+        private final ResolvedRoute route;
+        private final long routeNanos;
+
+        private Classification(Decision decision, IpAddress dstIp, ResolvedRoute route, long routeNanos) {
+            this.decision = decision;
+            this.dstIp = dstIp;
+            this.route = route;
+            this.routeNanos = routeNanos;
+        }
+
+        public Decision decision() {
+            return decision;
+        }
+
+        /**
+         * Returns the destination address, null if no route was looked up.
+         */
+        public IpAddress dstIp() {
+            return dstIp;
+        }
+
+        /**
+         * Returns the route of the destination for outbound and transit
+         * packets, null otherwise.
+         */
+        public ResolvedRoute route() {
+            return route;
+        }
+
+        /**
+         * Returns the time the route lookup took, -1 if there was none.
+         */
+        public long routeNanos() {
+            return routeNanos;
+        }
+
+        /**
+         * Tells whether a control packet is ARP or NDP, which the vrouter
+         * leaves to the proxy ARP application.
+         */
+        public boolean isNeighborDiscovery() {
+            return this == NEIGHBOR;
+        }
+    }
+}
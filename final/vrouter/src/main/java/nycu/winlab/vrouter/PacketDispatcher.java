@@ -0,0 +1,145 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import static org.onlab.util.Tools.groupedThreads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands packet processing off the packet dispatcher thread to a fixed set
+ * of single-threaded workers.
+ *
+ * A task goes to the worker chosen by its flow key, so the packets of one
+ * flow are processed in order by the same thread. Each worker has a bounded
+ * queue. When it is full the task is rejected and counted as dropped, so a
+ * burst cannot pile up unbounded work behind the dispatcher.
+ *
+ * The vrouter and ProxyArp bundles each carry a copy of this class. The
+ * copies differ only in the logger and thread group names; keep them so.
+ */
+public class PacketDispatcher {
+
+    public static final int DEFAULT_WORKERS = Math.min(8, Runtime.getRuntime().availableProcessors());
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    private final Logger log = LoggerFactory.getLogger("vrouter");
+    private final int workers;
+    private final int queueSize;
+    private volatile ThreadPoolExecutor[] shards;
+
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+
+    public PacketDispatcher() {
+        this(DEFAULT_WORKERS, DEFAULT_QUEUE_SIZE);
+    }
+
+    public PacketDispatcher(int workers, int queueSize) {
+        this.workers = Math.max(1, workers);
+        this.queueSize = Math.max(1, queueSize);
+    }
+
+    public void start() {
+        ThreadPoolExecutor[] executors = new ThreadPoolExecutor[workers];
+        for (int i = 0; i < workers; i++) {
+            executors[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueSize),
+                    groupedThreads("vrouter", "packet-worker-" + i + "-%d", log),
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+        shards = executors;
+    }
+
+    public void stop() {
+        ThreadPoolExecutor[] executors = shards;
+        shards = null;
+        if (executors == null) {
+            return;
+        }
+        for (ThreadPoolExecutor executor : executors) {
+            executor.shutdownNow();
+        }
+        log.info("Packet dispatcher stopped, {} dispatched, {} dropped, max queue depth {}",
+                dispatched.get(), dropped.get(), maxQueueDepth.get());
+    }
+
+    /**
+     * Queues a task on the worker of the given flow key.
+     *
+     * @return false if the worker's queue is full and the task was dropped
+     */
+    public boolean execute(int flowKey, Runnable task) {
+        ThreadPoolExecutor[] executors = shards;
+        if (executors == null) {
+            return false;
+        }
+        // Spread the key bits so that close keys do not share a worker
+        int h = flowKey * 0x9E3779B9;
+        ThreadPoolExecutor executor = executors[Integer.remainderUnsigned(h ^ (h >>> 16), executors.length)];
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            long drops = dropped.incrementAndGet();
+            if (Long.bitCount(drops) == 1) {
+                log.warn("Packet worker queue full, {} packets dropped so far, {} queued",
+                        drops, queueDepth());
+            }
+            return false;
+        }
+        dispatched.incrementAndGet();
+        int depth = executor.getQueue().size();
+        if (depth > maxQueueDepth.get()) {
+            maxQueueDepth.accumulateAndGet(depth, Math::max);
+        }
+        return true;
+    }
+
+    public int workers() {
+        return workers;
+    }
+
+    public long dispatched() {
+        return dispatched.get();
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    public long maxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public int queueDepth() {
+        ThreadPoolExecutor[] executors = shards;
+        int depth = 0;
+        if (executors != null) {
+            for (ThreadPoolExecutor executor : executors) {
+                depth += executor.getQueue().size();
+            }
+        }
+        return depth;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.ConnectPoint;
+
+/**
+ * One traced processing decision.
+ */
+public final class PacketTrace {
+
+    private final long timestamp;
+    private final ConnectPoint receivedFrom;
+    private final MacAddress srcMac;
+    private final MacAddress dstMac;
+    private final IpAddress dstIp;
+    private final String event;
+    private final String detail;
+
+    public PacketTrace(long timestamp, ConnectPoint receivedFrom, MacAddress srcMac, MacAddress dstMac,
+            IpAddress dstIp, String event, String detail) {
+        this.timestamp = timestamp;
+        this.receivedFrom = receivedFrom;
+        this.srcMac = srcMac;
+        this.dstMac = dstMac;
+        this.dstIp = dstIp;
+        this.event = event;
+        this.detail = detail;
+    }
+
+    /**
+     * Returns the wall clock time of the decision in milliseconds.
+     */
+    public long timestamp() {
+        return timestamp;
+    }
+
+    public ConnectPoint receivedFrom() {
+        return receivedFrom;
+    }
+
+    public MacAddress srcMac() {
+        return srcMac;
+    }
+
+    public MacAddress dstMac() {
+        return dstMac;
+    }
+
+    /**
+     * Returns the destination IP address, null for non-IP packets.
+     */
+    public IpAddress dstIp() {
+        return dstIp;
+    }
+
+    public String event() {
+        return event;
+    }
+
+    /**
+     * Returns the value qualifying the decision, null if there is none.
+     */
+    public String detail() {
+        return detail;
+    }
+
+    @Override
+    public String toString() {
+        return receivedFrom + " " + srcMac + " > " + dstMac
+                + (dstIp != null ? " dst=" + dstIp : "")
+                + " " + event + (detail != null ? " " + detail : "");
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.IPv4;
+import org.onlab.packet.IPv6;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.Ip6Address;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.IpPrefix;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.packet.PacketContext;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the traces of the selected packets in a fixed-size ring buffer,
+ * overwriting the oldest ones.
+ *
+ * Sampling is decided per packet from the identity of its context, so the
+ * decisions of a sampled packet are traced together.
+ */
+@Component(immediate = true, service = PacketTraceService.class)
+public class PacketTraceManager implements PacketTraceService {
+
+    private static final int CAPACITY = 1024;
+
+    private final AtomicReferenceArray<PacketTrace> buffer = new AtomicReferenceArray<>(CAPACITY);
+    private final AtomicLong next = new AtomicLong();
+
+    // Replaced as a whole on change so record() reads them without locking
+    private volatile Set<DeviceId> devices = ImmutableSet.of();
+    private volatile Set<IpPrefix> prefixes = ImmutableSet.of();
+    private volatile boolean active;
+    private volatile int sampleRate = 1;
+
+    @Deactivate
+    protected void deactivate() {
+        untraceAll();
+        clearTraces();
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public void record(PacketContext context, String event, Object detail) {
+        ConnectPoint receivedFrom = context.inPacket().receivedFrom();
+        Ethernet ethPkt = context.inPacket().parsed();
+        IpAddress dstIp = ethPkt != null ? destination(ethPkt) : null;
+        if (!selected(receivedFrom.deviceId(), dstIp) || !sampled(context)) {
+            return;
+        }
+
+        PacketTrace trace = new PacketTrace(System.currentTimeMillis(), receivedFrom,
+                ethPkt != null ? ethPkt.getSourceMAC() : null,
+                ethPkt != null ? ethPkt.getDestinationMAC() : null,
+                dstIp, event, detail != null ? detail.toString() : null);
+        buffer.set((int) (next.getAndIncrement() % CAPACITY), trace);
+    }
+
+    private boolean selected(DeviceId deviceId, IpAddress dstIp) {
+        if (devices.contains(deviceId)) {
+            return true;
+        }
+        if (dstIp != null) {
+            for (IpPrefix prefix : prefixes) {
+                if (prefix.contains(dstIp)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean sampled(PacketContext context) {
+        int rate = sampleRate;
+        return rate <= 1 || Integer.remainderUnsigned(System.identityHashCode(context) * 0x9E3779B9, rate) == 0;
+    }
+
+    private static IpAddress destination(Ethernet ethPkt) {
+        if (ethPkt.getEtherType() == Ethernet.TYPE_IPV4) {
+            return Ip4Address.valueOf(((IPv4) ethPkt.getPayload()).getDestinationAddress());
+        }
+        if (ethPkt.getEtherType() == Ethernet.TYPE_IPV6) {
+            return Ip6Address.valueOf(((IPv6) ethPkt.getPayload()).getDestinationAddress());
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void traceDevice(DeviceId deviceId) {
+        devices = ImmutableSet.<DeviceId>builder().addAll(devices).add(deviceId).build();
+        updateActive();
+    }
+
+    @Override
+    public synchronized void untraceDevice(DeviceId deviceId) {
+        ImmutableSet.Builder<DeviceId> builder = ImmutableSet.builder();
+        for (DeviceId id : devices) {
+            if (!id.equals(deviceId)) {
+                builder.add(id);
+            }
+        }
+        devices = builder.build();
+        updateActive();
+    }
+
+    @Override
+    public synchronized void tracePrefix(IpPrefix prefix) {
+        prefixes = ImmutableSet.<IpPrefix>builder().addAll(prefixes).add(prefix).build();
+        updateActive();
+    }
+
+    @Override
+    public synchronized void untracePrefix(IpPrefix prefix) {
+        ImmutableSet.Builder<IpPrefix> builder = ImmutableSet.builder();
+        for (IpPrefix p : prefixes) {
+            if (!p.equals(prefix)) {
+                builder.add(p);
+            }
+        }
+        prefixes = builder.build();
+        updateActive();
+    }
+
+    @Override
+    public synchronized void untraceAll() {
+        devices = ImmutableSet.of();
+        prefixes = ImmutableSet.of();
+        updateActive();
+    }
+
+    private void updateActive() {
+        active = !devices.isEmpty() || !prefixes.isEmpty();
+    }
+
+    @Override
+    public void setSampleRate(int oneIn) {
+        sampleRate = Math.max(1, oneIn);
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public Set<DeviceId> tracedDevices() {
+        return devices;
+    }
+
+    @Override
+    public Set<IpPrefix> tracedPrefixes() {
+        return prefixes;
+    }
+
+    @Override
+    public List<PacketTrace> traces() {
+        long end = next.get();
+        long start = Math.max(0, end - CAPACITY);
+        List<PacketTrace> traces = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            PacketTrace trace = buffer.get((int) (i % CAPACITY));
+            if (trace != null) {
+                traces.add(trace);
+            }
+        }
+        return traces;
+    }
+
+    @Override
+    public void clearTraces() {
+        for (int i = 0; i < CAPACITY; i++) {
+            buffer.set(i, null);
+        }
+    }
+}
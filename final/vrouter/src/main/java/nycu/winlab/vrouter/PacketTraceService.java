@@ -0,0 +1,122 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import org.onlab.packet.IpPrefix;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.packet.PacketContext;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Sampled tracing of the packet processing decisions.
+ *
+ * Tracing is off until a device or a destination prefix is selected. The
+ * decisions taken for selected packets are kept in a bounded ring buffer.
+ */
+public interface PacketTraceService {
+
+    /**
+     * Tells whether any device or prefix is traced. The processors check
+     * this before building anything for a trace.
+     *
+     * @return true if tracing is on
+     */
+    boolean isActive();
+
+    /**
+     * Records a processing decision if the packet is selected and sampled.
+     *
+     * @param context packet being processed
+     * @param event   short name of the decision
+     * @param detail  optional value qualifying the decision, may be null
+     */
+    void record(PacketContext context, String event, Object detail);
+
+    /**
+     * Traces the packets received on a device.
+     *
+     * @param deviceId device identifier
+     */
+    void traceDevice(DeviceId deviceId);
+
+    /**
+     * Stops tracing the packets received on a device.
+     *
+     * @param deviceId device identifier
+     */
+    void untraceDevice(DeviceId deviceId);
+
+    /**
+     * Traces the packets towards a destination prefix.
+     *
+     * @param prefix destination prefix
+     */
+    void tracePrefix(IpPrefix prefix);
+
+    /**
+     * Stops tracing the packets towards a destination prefix.
+     *
+     * @param prefix destination prefix
+     */
+    void untracePrefix(IpPrefix prefix);
+
+    /**
+     * Stops tracing all devices and prefixes.
+     */
+    void untraceAll();
+
+    /**
+     * Traces one in every given number of selected packets.
+     *
+     * @param oneIn sampling rate, 1 traces every selected packet
+     */
+    void setSampleRate(int oneIn);
+
+    /**
+     * Returns the sampling rate.
+     *
+     * @return one in how many selected packets is traced
+     */
+    int sampleRate();
+
+    /**
+     * Returns the traced devices.
+     *
+     * @return device identifiers
+     */
+    Set<DeviceId> tracedDevices();
+
+    /**
+     * Returns the traced destination prefixes.
+     *
+     * @return prefixes
+     */
+    Set<IpPrefix> tracedPrefixes();
+
+    /**
+     * Returns the buffered traces, oldest first.
+     *
+     * @return traces
+     */
+    List<PacketTrace> traces();
+
+    /**
+     * Empties the trace buffer.
+     */
+    void clearTraces();
+}
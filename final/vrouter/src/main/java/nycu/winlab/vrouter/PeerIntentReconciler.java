@@ -0,0 +1,145 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.IpPrefix;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.FilteredConnectPoint;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.intent.Intent;
+import org.onosproject.net.intent.IntentService;
+import org.onosproject.net.intent.IntentState;
+import org.onosproject.net.intent.Key;
+import org.onosproject.net.intent.PointToPointIntent;
+import org.onosproject.net.intf.Interface;
+import org.onosproject.net.intf.InterfaceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps the BGP peering intents in line with the router configuration.
+ *
+ * The desired intents are computed from a config snapshot and compared with
+ * the peering intents of the application found in the intent store. Only
+ * intents that are missing or differ are submitted, and only intents of
+ * peers no longer configured are withdrawn, so unchanged peerings keep
+ * their flows across config updates.
+ */
+public class PeerIntentReconciler {
+
+    private static final String KEY_PREFIX = "peer:";
+    private static final int PEER_PRIORITY = 100;
+
+    private final Logger log = LoggerFactory.getLogger("vrouter");
+    private final IntentService intentService;
+    private final InterfaceService interfaceService;
+
+    public PeerIntentReconciler(IntentService intentService, InterfaceService interfaceService) {
+        this.intentService = intentService;
+        this.interfaceService = interfaceService;
+    }
+
+    /**
+     * Submits and withdraws peering intents so that the store matches the
+     * given configuration.
+     */
+    public synchronized void reconcile(ApplicationId appId, RouterConfig cfg) {
+        Map<Key, PointToPointIntent> desired = new HashMap<>();
+        for (RouterConfig.Peer peer : cfg.peers()) {
+            Interface intf = interfaceService.getMatchingInterface(peer.local());
+            if (intf == null) {
+                log.warn("No interface for peer {}", peer);
+                continue;
+            }
+            addIntent(desired, appId, cfg.frrCp(), intf.connectPoint(), peer.remote());
+            addIntent(desired, appId, intf.connectPoint(), cfg.frrCp(), peer.local());
+        }
+
+        Map<Key, Intent> existing = new HashMap<>();
+        for (Intent intent : intentService.getIntentsByAppId(appId)) {
+            if (intent instanceof PointToPointIntent && intent.key().toString().startsWith(KEY_PREFIX)) {
+                existing.put(intent.key(), intent);
+            }
+        }
+
+        int submitted = 0;
+        int withdrawn = 0;
+        for (PointToPointIntent intent : desired.values()) {
+            Intent current = existing.remove(intent.key());
+            if (current == null || !isActive(current.key()) || !sameIntent(current, intent)) {
+                intentService.submit(intent);
+                submitted++;
+            }
+        }
+        for (Intent stale : existing.values()) {
+            if (isActive(stale.key())) {
+                intentService.withdraw(stale);
+                withdrawn++;
+            }
+        }
+        log.info("Peer intents reconciled, {} submitted, {} withdrawn", submitted, withdrawn);
+    }
+
+    private void addIntent(Map<Key, PointToPointIntent> intents, ApplicationId appId,
+            ConnectPoint ingress, ConnectPoint egress, IpAddress dstIp) {
+        Key key = Key.of(KEY_PREFIX + ingress + "->" + egress + ":" + dstIp, appId);
+        PointToPointIntent intent = PointToPointIntent.builder()
+                .appId(appId)
+                .key(key)
+                .priority(PEER_PRIORITY)
+                .filteredIngressPoint(new FilteredConnectPoint(ingress))
+                .filteredEgressPoint(new FilteredConnectPoint(egress))
+                .selector(selector(dstIp))
+                .build();
+        intents.put(key, intent);
+    }
+
+    private TrafficSelector selector(IpAddress dstIp) {
+        if (dstIp.isIp4()) {
+            return DefaultTrafficSelector.builder()
+                    .matchEthType(Ethernet.TYPE_IPV4)
+                    .matchIPDst(IpPrefix.valueOf(dstIp, 32))
+                    .build();
+        }
+        return DefaultTrafficSelector.builder()
+                .matchEthType(Ethernet.TYPE_IPV6)
+                .matchIPv6Dst(IpPrefix.valueOf(dstIp, 128))
+                .build();
+    }
+
+    private boolean isActive(Key key) {
+        IntentState state = intentService.getIntentState(key);
+        return state != null && state != IntentState.WITHDRAWING && state != IntentState.WITHDRAW_REQ
+                && state != IntentState.WITHDRAWN && state != IntentState.FAILED;
+    }
+
+    private boolean sameIntent(Intent current, PointToPointIntent desired) {
+        PointToPointIntent intent = (PointToPointIntent) current;
+        return intent.priority() == desired.priority()
+                && Objects.equals(intent.filteredIngressPoint(), desired.filteredIngressPoint())
+                && Objects.equals(intent.filteredEgressPoint(), desired.filteredEgressPoint())
+                && Objects.equals(intent.selector(), desired.selector())
+                && Objects.equals(intent.treatment(), desired.treatment());
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import static org.onlab.util.Tools.groupedThreads;
+
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Destinations whose MAC address is being resolved.
+ *
+ * Packets towards an unresolved address are held in a small per-destination
+ * buffer instead of being flooded. At most one probe per destination is
+ * asked for each probe interval, and the buffered packets are handed back
+ * once the host shows up. Each packet keeps the source MAC address of the
+ * path that held it, so it leaves the way the installed flow rewrites it.
+ * Destinations that stay unresolved are given up by a periodic sweep,
+ * together with the packets held for them.
+ */
+public class PendingResolutions {
+
+    public static final long DEFAULT_PROBE_INTERVAL_MS = 1000;
+    public static final int DEFAULT_MAX_PACKETS = 8;
+
+    private static final int MAX_DESTINATIONS = 1024;
+    // Destinations without traffic for this many probe intervals are given up
+    private static final int EXPIRY_INTERVALS = 10;
+    private static final long SWEEP_INTERVAL_MS = 1000;
+
+    private final Logger log = LoggerFactory.getLogger("vrouter");
+    private ScheduledExecutorService executor;
+    private final ConcurrentMap<IpAddress, Pending> pending = new ConcurrentHashMap<>();
+    private volatile long probeIntervalMs = DEFAULT_PROBE_INTERVAL_MS;
+    private volatile int maxPackets = DEFAULT_MAX_PACKETS;
+
+    private final AtomicLong probes = new AtomicLong();
+    private final AtomicLong buffered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(
+                groupedThreads("vrouter", "pending-sweep-%d", log));
+        executor.scheduleWithFixedDelay(() -> expire(System.nanoTime() / 1_000_000),
+                SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        clear();
+    }
+
+    public void configure(long probeIntervalMs, int maxPackets) {
+        this.probeIntervalMs = probeIntervalMs;
+        this.maxPackets = Math.max(1, maxPackets);
+    }
+
+    /**
+     * Buffers a packet towards an unresolved destination.
+     *
+     * @param srcMac source MAC address to send the packet with once released
+     * @return true if a probe for the destination should be sent now
+     */
+    public boolean enqueue(IpAddress dst, Ethernet frame, MacAddress srcMac, long now) {
+        if (!pending.containsKey(dst) && pending.size() >= MAX_DESTINATIONS) {
+            expire(now);
+            if (pending.size() >= MAX_DESTINATIONS) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        }
+
+        while (true) {
+            Pending entry = pending.computeIfAbsent(dst, ip -> new Pending());
+            synchronized (entry) {
+                if (entry.released) {
+                    // Resolved meanwhile, start over with a fresh entry
+                    continue;
+                }
+                if (entry.packets.size() >= maxPackets) {
+                    entry.packets.poll();
+                    dropped.incrementAndGet();
+                }
+                entry.packets.add(new HeldPacket(frame, srcMac));
+                entry.lastActivity = now;
+                buffered.incrementAndGet();
+
+                if (!entry.probed || now - entry.lastProbe >= probeIntervalMs) {
+                    entry.probed = true;
+                    entry.lastProbe = now;
+                    probes.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Removes a destination and returns the packets buffered for it.
+     */
+    public List<HeldPacket> release(IpAddress dst) {
+        Pending entry = pending.remove(dst);
+        if (entry == null) {
+            return Collections.emptyList();
+        }
+        synchronized (entry) {
+            entry.released = true;
+            return new ArrayList<>(entry.packets);
+        }
+    }
+
+    public void clear() {
+        pending.clear();
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    public long probes() {
+        return probes.get();
+    }
+
+    public long buffered() {
+        return buffered.get();
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Gives up destinations without traffic for ten probe intervals and
+     * drops the packets held for them.
+     */
+    void expire(long now) {
+        long idleSince = now - probeIntervalMs * EXPIRY_INTERVALS;
+        for (Map.Entry<IpAddress, Pending> e : pending.entrySet()) {
+            Pending entry = e.getValue();
+            synchronized (entry) {
+                if (entry.lastActivity < idleSince && pending.remove(e.getKey(), entry)) {
+                    entry.released = true;
+                    dropped.addAndGet(entry.packets.size());
+                    entry.packets.clear();
+                }
+            }
+        }
+    }
+
+    private static final class Pending {
+        final ArrayDeque<HeldPacket> packets = new ArrayDeque<>();
+        boolean probed;
+        long lastProbe;
+        long lastActivity;
+        boolean released;
+    }
+
+    /**
+     * A buffered packet and the source MAC address it is sent with.
+     */
+    public static final class HeldPacket {
+        private final Ethernet frame;
+        private final MacAddress srcMac;
+
+        HeldPacket(Ethernet frame, MacAddress srcMac) {
+            this.frame = frame;
+            this.srcMac = srcMac;
+        }
+
+        public Ethernet frame() {
+            return frame;
+        }
+
+        public MacAddress srcMac() {
+            return srcMac;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import org.onlab.packet.ARP;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.ICMP6;
+import org.onlab.packet.IPv6;
+import org.onlab.packet.Ip6Address;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
+import org.onlab.packet.ndp.NeighborDiscoveryOptions;
+import org.onlab.packet.ndp.NeighborSolicitation;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.packet.DefaultOutboundPacket;
+import org.onosproject.net.packet.PacketService;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Sends ARP requests and IPv6 neighbor solicitations from the gateway.
+ *
+ * One ARP and one NS frame are serialized per gateway when the generator is
+ * built, with an empty target. A probe copies the template, writes the
+ * target address in place and, for NS, patches the ICMPv6 checksum
+ * incrementally. A fresh copy is made per target because the packet
+ * provider may still hold the array of a previous emit.
+ */
+public class ProbeGenerator {
+
+    // Ethernet header followed by the ARP fields before the target protocol address
+    private static final int ARP_TARGET_OFFSET = 14 + 24;
+    private static final int ICMP6_OFFSET = 14 + 40;
+    private static final int NS_CHECKSUM_OFFSET = ICMP6_OFFSET + 2;
+    private static final int NS_TARGET_OFFSET = ICMP6_OFFSET + 8;
+    private static final Ip6Address ALL_NODES = Ip6Address.valueOf("ff02::1");
+
+    private final PacketService packetService;
+    private final Supplier<EdgePorts> edgePorts;
+    private final MacAddress frrMac;
+    private final byte[] arpTemplate;
+    private final byte[] nsTemplate;
+    private final ConcurrentMap<PortNumber, TrafficTreatment> treatments = new ConcurrentHashMap<>();
+
+    public ProbeGenerator(PacketService packetService, Supplier<EdgePorts> edgePorts, RouterConfig cfg) {
+        this.packetService = packetService;
+        this.edgePorts = edgePorts;
+        this.frrMac = cfg.frrMac();
+        this.arpTemplate = buildArpTemplate(cfg);
+        this.nsTemplate = buildNsTemplate(cfg);
+    }
+
+    /**
+     * Probes one address from every edge port.
+     */
+    public void probe(IpAddress target) {
+        probe(Collections.singletonList(target));
+    }
+
+    /**
+     * Probes several addresses in one pass over the edge ports.
+     */
+    public void probe(Collection<? extends IpAddress> targets) {
+        if (targets.isEmpty()) {
+            return;
+        }
+        List<ByteBuffer> frames = new ArrayList<>(targets.size());
+        for (IpAddress target : targets) {
+            frames.add(ByteBuffer.wrap(target.isIp4() ? arpFrame(target) : nsFrame(target)));
+        }
+
+        for (ConnectPoint point : edgePorts.get().points()) {
+            TrafficTreatment treatment = treatments.computeIfAbsent(point.port(), this::buildTreatment);
+            for (ByteBuffer frame : frames) {
+                packetService.emit(new DefaultOutboundPacket(point.deviceId(), treatment, frame));
+            }
+        }
+    }
+
+    private TrafficTreatment buildTreatment(PortNumber port) {
+        return DefaultTrafficTreatment.builder()
+                .setOutput(port)
+                .setEthSrc(frrMac)
+                .build();
+    }
+
+    private byte[] arpFrame(IpAddress target) {
+        byte[] frame = arpTemplate.clone();
+        System.arraycopy(target.toOctets(), 0, frame, ARP_TARGET_OFFSET, 4);
+        return frame;
+    }
+
+    private byte[] nsFrame(IpAddress target) {
+        byte[] frame = nsTemplate.clone();
+        byte[] octets = target.toOctets();
+        System.arraycopy(octets, 0, frame, NS_TARGET_OFFSET, 16);
+
+        // The template checksum covers an all-zero target, add the target words to it
+        int sum = ~(((frame[NS_CHECKSUM_OFFSET] & 0xff) << 8) | (frame[NS_CHECKSUM_OFFSET + 1] & 0xff)) & 0xffff;
+        for (int i = 0; i < 16; i += 2) {
+            sum += ((octets[i] & 0xff) << 8) | (octets[i + 1] & 0xff);
+        }
+        while ((sum >>> 16) != 0) {
+            sum = (sum & 0xffff) + (sum >>> 16);
+        }
+        int checksum = ~sum & 0xffff;
+        frame[NS_CHECKSUM_OFFSET] = (byte) (checksum >>> 8);
+        frame[NS_CHECKSUM_OFFSET + 1] = (byte) checksum;
+        return frame;
+    }
+
+    private static byte[] buildArpTemplate(RouterConfig cfg) {
+        ARP arpRequest = new ARP();
+        arpRequest.setHardwareType(ARP.HW_TYPE_ETHERNET)
+                .setProtocolType(ARP.PROTO_TYPE_IP)
+                .setHardwareAddressLength((byte) Ethernet.DATALAYER_ADDRESS_LENGTH)
+                .setProtocolAddressLength((byte) 4)
+                .setOpCode(ARP.OP_REQUEST)
+                .setSenderHardwareAddress(cfg.gatewayMac().toBytes())
+                .setSenderProtocolAddress(cfg.gatewayIp4().toInt())
+                .setTargetHardwareAddress(MacAddress.BROADCAST.toBytes())
+                .setTargetProtocolAddress(0);
+
+        Ethernet ethPkt = new Ethernet();
+        ethPkt.setEtherType(Ethernet.TYPE_ARP)
+                .setSourceMACAddress(cfg.gatewayMac())
+                .setDestinationMACAddress(MacAddress.BROADCAST)
+                .setPayload(arpRequest);
+        return ethPkt.serialize();
+    }
+
+    private static byte[] buildNsTemplate(RouterConfig cfg) {
+        NeighborSolicitation ns = new NeighborSolicitation()
+                .setTargetAddress(new byte[16])
+                .addOption(NeighborDiscoveryOptions.TYPE_SOURCE_LL_ADDRESS, cfg.gatewayMac().toBytes());
+
+        Ethernet ethPkt = new Ethernet();
+        ethPkt.setEtherType(Ethernet.TYPE_IPV6);
+        ethPkt.setDestinationMACAddress(MacAddress.IPV6_MULTICAST);
+        ethPkt.setSourceMACAddress(cfg.gatewayMac());
+        ethPkt.setPayload(new IPv6()
+                .setDestinationAddress(ALL_NODES.toOctets())
+                .setSourceAddress(cfg.gatewayIp6().toOctets())
+                .setNextHeader(IPv6.PROTOCOL_ICMP6)
+                .setHopLimit((byte) 255)
+                .setPayload(new ICMP6()
+                        .setIcmpType(ICMP6.NEIGHBOR_SOLICITATION)
+                        .setIcmpCode((byte) 0)
+                        .setPayload(ns)));
+        return ethPkt.serialize();
+    }
+}
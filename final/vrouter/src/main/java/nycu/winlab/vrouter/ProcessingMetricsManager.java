@@ -0,0 +1,89 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import org.osgi.service.component.annotations.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Holds one latency histogram per processing stage, and the gauges the
+ * vrouter components publish.
+ */
+@Component(immediate = true, service = ProcessingMetricsService.class)
+public class ProcessingMetricsManager implements ProcessingMetricsService {
+
+    private final Map<ProcessingStage, LatencyHistogram> histograms = new EnumMap<>(ProcessingStage.class);
+    private final ConcurrentMap<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+    private volatile long since = System.currentTimeMillis();
+
+    public ProcessingMetricsManager() {
+        for (ProcessingStage stage : ProcessingStage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    @Override
+    public void record(ProcessingStage stage, long nanos) {
+        histograms.get(stage).record(nanos);
+    }
+
+    @Override
+    public LatencyHistogram histogram(ProcessingStage stage) {
+        return histograms.get(stage);
+    }
+
+    @Override
+    public long since() {
+        return since;
+    }
+
+    @Override
+    public double rate(ProcessingStage stage) {
+        long elapsed = System.currentTimeMillis() - since;
+        return elapsed <= 0 ? 0 : histograms.get(stage).count() * 1000.0 / elapsed;
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        since = System.currentTimeMillis();
+    }
+
+    @Override
+    public void registerGauge(String name, Supplier<? extends Number> gauge) {
+        gauges.put(name, gauge);
+    }
+
+    @Override
+    public void unregisterGauge(String name) {
+        gauges.remove(name);
+    }
+
+    @Override
+    public Map<String, Number> gauges() {
+        Map<String, Number> values = new TreeMap<>();
+        gauges.forEach((name, gauge) -> values.put(name, gauge.get()));
+        return values;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Latency and throughput of the packet processing stages.
+ */
+public interface ProcessingMetricsService {
+
+    /**
+     * Records the time spent in a stage.
+     *
+     * @param stage processing stage
+     * @param nanos elapsed time in nanoseconds
+     */
+    void record(ProcessingStage stage, long nanos);
+
+    /**
+     * Returns the latency histogram of a stage.
+     *
+     * @param stage processing stage
+     * @return histogram, live and shared
+     */
+    LatencyHistogram histogram(ProcessingStage stage);
+
+    /**
+     * Returns the wall clock time of the last reset in milliseconds.
+     *
+     * @return start of the measurement period
+     */
+    long since();
+
+    /**
+     * Returns how many times per second a stage ran since the last reset.
+     *
+     * @param stage processing stage
+     * @return throughput of the stage
+     */
+    double rate(ProcessingStage stage);
+
+    /**
+     * Clears all histograms and starts a new measurement period.
+     */
+    void reset();
+
+    /**
+     * Publishes a value read from a component on every listing, such as a
+     * queue depth or a counter. Gauges belong to their component and are
+     * not cleared by a reset.
+     *
+     * @param name  gauge name, replacing any gauge of that name
+     * @param gauge reads the current value
+     */
+    void registerGauge(String name, Supplier<? extends Number> gauge);
+
+    /**
+     * Removes a gauge.
+     *
+     * @param name gauge name
+     */
+    void unregisterGauge(String name);
+
+    /**
+     * Returns the current value of every gauge, sorted by name.
+     *
+     * @return gauge values
+     */
+    Map<String, Number> gauges();
+}
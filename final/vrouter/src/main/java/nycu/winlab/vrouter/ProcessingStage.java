@@ -0,0 +1,38 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+/**
+ * Stages of the packet processing that are timed.
+ */
+public enum ProcessingStage {
+    /** From the packet-in to the end of its handling, worker queueing included. */
+    TOTAL,
+    /** Reading the parsed packet and classifying it, route lookup included. */
+    PARSE,
+    /** Handling of inbound packets, from peers towards local hosts. */
+    EXTERNAL_IN,
+    /** Handling of outbound and transit packets, towards external routes. */
+    EXTERNAL_OUT,
+    /** Learning bridge handling of intra-domain and BGP packets. */
+    INTRA_DOMAIN,
+    /** Resolving an IP address to its host binding. */
+    HOST_LOOKUP,
+    /** Longest prefix match in the FIB. */
+    ROUTE_LOOKUP,
+    /** Handing an intent or a flow rule to ONOS. */
+    INTENT_SUBMIT
+}
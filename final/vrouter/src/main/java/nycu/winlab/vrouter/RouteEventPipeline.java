@@ -0,0 +1,179 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import static org.onlab.util.Tools.groupedThreads;
+
+import org.onlab.packet.IpPrefix;
+import org.onosproject.routeservice.RouteEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces route events and applies them in batches.
+ *
+ * Events are collected for a window starting at the first pending event.
+ * Within the window only the latest event of each prefix is kept, so a
+ * burst of updates to a route costs one intent change. The surviving events
+ * are then handed to the handler as one batch on a dedicated thread, off
+ * the route service's event thread. The intent service has no bulk submit,
+ * so the handler still submits each event's intent on its own.
+ */
+public class RouteEventPipeline {
+
+    public static final long DEFAULT_WINDOW_MS = 100;
+
+    private final Logger log = LoggerFactory.getLogger("vrouter");
+    private final Consumer<RouteEvent> handler;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    private Map<IpPrefix, RouteEvent> pending = new LinkedHashMap<>();
+    private ScheduledExecutorService executor;
+    private volatile long windowMs = DEFAULT_WINDOW_MS;
+
+    private final AtomicLong eventsReceived = new AtomicLong();
+    private final AtomicLong eventsApplied = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+    private final AtomicLong totalBatchNanos = new AtomicLong();
+    private final AtomicLong maxBatchNanos = new AtomicLong();
+    private final AtomicLong lastBatchNanos = new AtomicLong();
+
+    public RouteEventPipeline(Consumer<RouteEvent> handler) {
+        this.handler = handler;
+    }
+
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(
+                groupedThreads("vrouter", "route-events-%d", log));
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+        executor = null;
+        synchronized (this) {
+            pending.clear();
+        }
+        flushScheduled.set(false);
+    }
+
+    /**
+     * Sets the coalescing window.
+     */
+    public void configure(long windowMs) {
+        this.windowMs = Math.max(0, windowMs);
+    }
+
+    /**
+     * Queues a route event, replacing any pending event of the same prefix.
+     */
+    public void submit(RouteEvent event) {
+        int depth;
+        synchronized (this) {
+            pending.put(event.subject().prefix(), event);
+            depth = pending.size();
+        }
+        eventsReceived.incrementAndGet();
+        maxQueueDepth.accumulateAndGet(depth, Math::max);
+
+        ScheduledExecutorService exec = executor;
+        if (exec != null && flushScheduled.compareAndSet(false, true)) {
+            exec.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        Map<IpPrefix, RouteEvent> drained;
+        synchronized (this) {
+            drained = pending;
+            pending = new LinkedHashMap<>();
+            flushScheduled.set(false);
+        }
+        if (!drained.isEmpty()) {
+            apply(drained.values());
+        }
+    }
+
+    private void apply(Collection<RouteEvent> batch) {
+        long start = System.nanoTime();
+        for (RouteEvent event : batch) {
+            try {
+                handler.accept(event);
+            } catch (Exception e) {
+                log.error("Failed to apply {} of {}", event.type(), event.subject().prefix(), e);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        eventsApplied.addAndGet(batch.size());
+        batches.incrementAndGet();
+        totalBatchNanos.addAndGet(elapsed);
+        lastBatchNanos.set(elapsed);
+        maxBatchNanos.accumulateAndGet(elapsed, Math::max);
+        log.debug("Applied {} route events in {} us", batch.size(), elapsed / 1000);
+    }
+
+    public synchronized int queueDepth() {
+        return pending.size();
+    }
+
+    public long maxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public long eventsReceived() {
+        return eventsReceived.get();
+    }
+
+    public long eventsApplied() {
+        return eventsApplied.get();
+    }
+
+    /**
+     * Returns how many received events were folded into each applied one.
+     */
+    public double coalescingRatio() {
+        long applied = eventsApplied.get();
+        return applied == 0 ? 0 : (double) eventsReceived.get() / applied;
+    }
+
+    public long batches() {
+        return batches.get();
+    }
+
+    public long averageBatchNanos() {
+        long count = batches.get();
+        return count == 0 ? 0 : totalBatchNanos.get() / count;
+    }
+
+    public long maxBatchNanos() {
+        return maxBatchNanos.get();
+    }
+
+    public long lastBatchNanos() {
+        return lastBatchNanos.get();
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.Ip4Prefix;
+import org.onlab.packet.Ip6Address;
+import org.onlab.packet.Ip6Prefix;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.ConnectPoint;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable, validated view of the router configuration.
+ *
+ * A snapshot is built once per configuration change and published through
+ * a volatile reference, so the packet processors read it without locking.
+ */
+public final class RouterConfig {
+
+    private final ConnectPoint frrCp;
+    private final MacAddress frrMac;
+    private final Ip4Address gatewayIp4;
+    private final Ip6Address gatewayIp6;
+    private final MacAddress gatewayMac;
+    private final Set<Peer> v4Peers;
+    private final Set<Peer> v6Peers;
+    private final Ip4Address taGatewayIp4;
+    private final Ip6Address taGatewayIp6;
+    private final Ip4Prefix taDomainIp4;
+    private final Ip6Prefix taDomainIp6;
+    private final boolean aggregateRoutes;
+    private final long routeBatchWindowMs;
+    private final int macTableSize;
+    private final long macIdleTimeoutMs;
+    private final long probeIntervalMs;
+    private final int pendingPackets;
+    private final int intentBatchSize;
+    private final long intentBatchDelayMs;
+
+    private RouterConfig(VConfig config) {
+        frrCp = ConnectPoint.fromString(required(config.frrCp(), VConfig.frrCp));
+        frrMac = MacAddress.valueOf(required(config.frrMac(), VConfig.frrMac));
+        gatewayIp4 = Ip4Address.valueOf(required(config.gatewayIp4(), VConfig.gatewayIp4));
+        gatewayIp6 = Ip6Address.valueOf(required(config.gatewayIp6(), VConfig.gatewayIp6));
+        gatewayMac = MacAddress.valueOf(required(config.gatewayMac(), VConfig.gatewayMac));
+        v4Peers = parsePeers(config.v4Peers(), IpAddress.Version.INET);
+        v6Peers = parsePeers(config.v6Peers(), IpAddress.Version.INET6);
+        taGatewayIp4 = Ip4Address.valueOf(required(config.taGatewayIp4(), "ta-gateway-ip4"));
+        taGatewayIp6 = Ip6Address.valueOf(required(config.taGatewayIp6(), "ta-gateway-ip6"));
+        taDomainIp4 = Ip4Prefix.valueOf(required(config.taDomainIp4(), "ta-domain-ip4"));
+        taDomainIp6 = Ip6Prefix.valueOf(required(config.taDomainIp6(), "ta-domain-ip6"));
+        aggregateRoutes = config.aggregateRoutes();
+        routeBatchWindowMs = config.routeBatchWindowMs();
+        macTableSize = config.macTableSize();
+        macIdleTimeoutMs = config.macIdleTimeout() * 1000L;
+        if (macTableSize <= 0 || macIdleTimeoutMs <= 0) {
+            throw new IllegalArgumentException("MAC table size and idle timeout must be positive");
+        }
+        probeIntervalMs = config.probeIntervalMs();
+        pendingPackets = config.pendingPackets();
+        intentBatchSize = config.intentBatchSize();
+        intentBatchDelayMs = config.intentBatchDelayMs();
+    }
+
+    /**
+     * Builds a snapshot of the given configuration.
+     *
+     * @throws IllegalArgumentException if a field is missing or malformed
+     */
+    public static RouterConfig of(VConfig config) {
+        return new RouterConfig(config);
+    }
+
+    private static String required(String value, String field) {
+        if (value == null) {
+            throw new IllegalArgumentException("Missing field " + field);
+        }
+        return value;
+    }
+
+    private static Set<Peer> parsePeers(List<String> entries, IpAddress.Version version) {
+        ImmutableSet.Builder<Peer> peers = ImmutableSet.builder();
+        for (String entry : entries) {
+            Peer peer = Peer.parse(entry);
+            if (peer.local().version() != version || peer.remote().version() != version) {
+                throw new IllegalArgumentException("Peer " + entry + " is not " + version);
+            }
+            peers.add(peer);
+        }
+        return peers.build();
+    }
+
+    public ConnectPoint frrCp() {
+        return frrCp;
+    }
+
+    public MacAddress frrMac() {
+        return frrMac;
+    }
+
+    public Ip4Address gatewayIp4() {
+        return gatewayIp4;
+    }
+
+    public Ip6Address gatewayIp6() {
+        return gatewayIp6;
+    }
+
+    public MacAddress gatewayMac() {
+        return gatewayMac;
+    }
+
+    public Set<Peer> v4Peers() {
+        return v4Peers;
+    }
+
+    public Set<Peer> v6Peers() {
+        return v6Peers;
+    }
+
+    public Set<Peer> peers() {
+        return Sets.union(v4Peers, v6Peers);
+    }
+
+    public Ip4Address taGatewayIp4() {
+        return taGatewayIp4;
+    }
+
+    public Ip6Address taGatewayIp6() {
+        return taGatewayIp6;
+    }
+
+    public Ip4Prefix taDomainIp4() {
+        return taDomainIp4;
+    }
+
+    public Ip6Prefix taDomainIp6() {
+        return taDomainIp6;
+    }
+
+    public boolean aggregateRoutes() {
+        return aggregateRoutes;
+    }
+
+    public long routeBatchWindowMs() {
+        return routeBatchWindowMs;
+    }
+
+    public int macTableSize() {
+        return macTableSize;
+    }
+
+    public long macIdleTimeoutMs() {
+        return macIdleTimeoutMs;
+    }
+
+    public long probeIntervalMs() {
+        return probeIntervalMs;
+    }
+
+    public int pendingPackets() {
+        return pendingPackets;
+    }
+
+    public int intentBatchSize() {
+        return intentBatchSize;
+    }
+
+    public long intentBatchDelayMs() {
+        return intentBatchDelayMs;
+    }
+
+    /**
+     * Returns the peers whose BGP intents must be installed when moving from
+     * the previous snapshot to this one.
+     */
+    public Set<Peer> addedPeers(RouterConfig previous) {
+        if (previous == null || !frrCp.equals(previous.frrCp)) {
+            return peers();
+        }
+        return Sets.difference(peers(), previous.peers());
+    }
+
+    /**
+     * Returns the peers whose BGP intents must be withdrawn when moving from
+     * the previous snapshot to this one.
+     */
+    public Set<Peer> removedPeers(RouterConfig previous) {
+        if (previous == null) {
+            return ImmutableSet.of();
+        }
+        if (!frrCp.equals(previous.frrCp)) {
+            return previous.peers();
+        }
+        return Sets.difference(previous.peers(), peers());
+    }
+
+    /**
+     * A BGP peering, the local address of the router and the peer's address.
+     */
+    public static final class Peer {
+        private final IpAddress local;
+        private final IpAddress remote;
+
+        public Peer(IpAddress local, IpAddress remote) {
+            this.local = local;
+            this.remote = remote;
+        }
+
+        /**
+         * Parses a "local, remote" entry of v4-peers or v6-peers.
+         */
+        public static Peer parse(String entry) {
+            String[] ips = entry.split(",");
+            if (ips.length != 2) {
+                throw new IllegalArgumentException("Malformed peer " + entry);
+            }
+            return new Peer(IpAddress.valueOf(ips[0].trim()), IpAddress.valueOf(ips[1].trim()));
+        }
+
+        public IpAddress local() {
+            return local;
+        }
+
+        public IpAddress remote() {
+            return remote;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Peer)) {
+                return false;
+            }
+            Peer other = (Peer) obj;
+            return local.equals(other.local) && remote.equals(other.remote);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(local, remote);
+        }
+
+        @Override
+        public String toString() {
+            return local + ", " + remote;
+        }
+    }
+}
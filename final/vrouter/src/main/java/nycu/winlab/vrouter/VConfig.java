@@ -17,6 +17,14 @@ public class VConfig extends Config<ApplicationId> {
     private static final String TA_GATEWAY_IP6 = "ta-gateway-ip6";
     private static final String TA_DOMAIN_IP4 = "ta-domain-ip4";
     private static final String TA_DOMAIN_IP6 = "ta-domain-ip6";
+    private static final String AGGREGATE_ROUTES = "aggregate-routes";
+    private static final String ROUTE_BATCH_WINDOW_MS = "route-batch-window-ms";
+    private static final String MAC_TABLE_SIZE = "mac-table-size";
+    private static final String MAC_IDLE_TIMEOUT = "mac-idle-timeout";
+    private static final String PROBE_INTERVAL_MS = "probe-interval-ms";
+    private static final String PENDING_PACKETS = "pending-packets";
+    private static final String INTENT_BATCH_SIZE = "intent-batch-size";
+    private static final String INTENT_BATCH_DELAY_MS = "intent-batch-delay-ms";
 
     public String frrCp() {
         return get(frrCp, null);
@@ -61,4 +69,42 @@ public class VConfig extends Config<ApplicationId> {
     public String taDomainIp6() {
         return get(TA_DOMAIN_IP6, null);
     }
+
+    public boolean aggregateRoutes() {
+        return get(AGGREGATE_ROUTES, false);
+    }
+
+    public long routeBatchWindowMs() {
+        return get(ROUTE_BATCH_WINDOW_MS, RouteEventPipeline.DEFAULT_WINDOW_MS);
+    }
+
+    public int macTableSize() {
+        return get(MAC_TABLE_SIZE, MacTable.DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Seconds a learned MAC address stays valid without traffic.
+     */
+    public int macIdleTimeout() {
+        return get(MAC_IDLE_TIMEOUT, (int) (MacTable.DEFAULT_IDLE_TIMEOUT_MS / 1000));
+    }
+
+    public long probeIntervalMs() {
+        return get(PROBE_INTERVAL_MS, PendingResolutions.DEFAULT_PROBE_INTERVAL_MS);
+    }
+
+    /**
+     * Packets held per unresolved destination while it is probed.
+     */
+    public int pendingPackets() {
+        return get(PENDING_PACKETS, PendingResolutions.DEFAULT_MAX_PACKETS);
+    }
+
+    public int intentBatchSize() {
+        return get(INTENT_BATCH_SIZE, IntentBatcher.DEFAULT_FLUSH_SIZE);
+    }
+
+    public long intentBatchDelayMs() {
+        return get(INTENT_BATCH_DELAY_MS, IntentBatcher.DEFAULT_FLUSH_DELAY_MS);
+    }
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter.cli;
+
+import nycu.winlab.vrouter.PacketTrace;
+import nycu.winlab.vrouter.PacketTraceService;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.onlab.packet.IpPrefix;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.net.DeviceId;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Selects the packets traced by the vrouter and lists the traces.
+ */
+@Service
+@Command(scope = "onos", name = "vrouter-trace",
+        description = "Selects the packets traced by the vrouter and lists the traces")
+public class PacketTraceCommand extends AbstractShellCommand {
+
+    @Option(name = "-d", aliases = "--device", description = "Trace packets received on a device")
+    private String device = null;
+
+    @Option(name = "-p", aliases = "--prefix", description = "Trace packets towards a prefix")
+    private String prefix = null;
+
+    @Option(name = "-r", aliases = "--remove", description = "Stop tracing the given device or prefix")
+    private boolean remove = false;
+
+    @Option(name = "-s", aliases = "--sample", description = "Trace one in every N selected packets")
+    private int sample = 0;
+
+    @Option(name = "-o", aliases = "--off", description = "Stop tracing all devices and prefixes")
+    private boolean off = false;
+
+    @Option(name = "-c", aliases = "--clear", description = "Empty the trace buffer")
+    private boolean clear = false;
+
+    @Override
+    protected void doExecute() {
+        PacketTraceService traceService = get(PacketTraceService.class);
+
+        if (off) {
+            traceService.untraceAll();
+        }
+        if (device != null) {
+            DeviceId deviceId = DeviceId.deviceId(device);
+            if (remove) {
+                traceService.untraceDevice(deviceId);
+            } else {
+                traceService.traceDevice(deviceId);
+            }
+        }
+        if (prefix != null) {
+            IpPrefix ipPrefix = IpPrefix.valueOf(prefix);
+            if (remove) {
+                traceService.untracePrefix(ipPrefix);
+            } else {
+                traceService.tracePrefix(ipPrefix);
+            }
+        }
+        if (sample > 0) {
+            traceService.setSampleRate(sample);
+        }
+        if (clear) {
+            traceService.clearTraces();
+        }
+
+        print("devices=%s, prefixes=%s, sample=1/%d",
+                traceService.tracedDevices(), traceService.tracedPrefixes(), traceService.sampleRate());
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+        for (PacketTrace trace : traceService.traces()) {
+            print("%s %s", format.format(new Date(trace.timestamp())), trace);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter.cli;
+
+import nycu.winlab.vrouter.LatencyHistogram;
+import nycu.winlab.vrouter.ProcessingMetricsService;
+import nycu.winlab.vrouter.ProcessingStage;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.onosproject.cli.AbstractShellCommand;
+
+import java.util.Map;
+
+/**
+ * Lists the latency and throughput of the vrouter processing stages, then
+ * the gauges of its queues and batchers.
+ */
+@Service
+@Command(scope = "onos", name = "vrouter-metrics",
+        description = "Lists the latency and throughput of the vrouter processing stages")
+public class ProcessingMetricsCommand extends AbstractShellCommand {
+
+    private static final String FORMAT = "%-14s %10d %10.1f %9.1f %9.1f %9.1f %9.1f %9.1f";
+
+    @Option(name = "-r", aliases = "--reset", description = "Reset the metrics after listing them")
+    private boolean reset = false;
+
+    @Override
+    protected void doExecute() {
+        ProcessingMetricsService metricsService = get(ProcessingMetricsService.class);
+
+        print("%-14s %10s %10s %9s %9s %9s %9s %9s",
+                "stage", "count", "per-sec", "mean-us", "p50-us", "p90-us", "p99-us", "max-us");
+        for (ProcessingStage stage : ProcessingStage.values()) {
+            LatencyHistogram histogram = metricsService.histogram(stage);
+            print(FORMAT, stage.name().toLowerCase(), histogram.count(), metricsService.rate(stage),
+                    micros(histogram.meanNanos()), micros(histogram.percentileNanos(50)),
+                    micros(histogram.percentileNanos(90)), micros(histogram.percentileNanos(99)),
+                    micros(histogram.maxNanos()));
+        }
+
+        Map<String, Number> gauges = metricsService.gauges();
+        if (!gauges.isEmpty()) {
+            print("");
+            for (Map.Entry<String, Number> gauge : gauges.entrySet()) {
+                print("%-36s %s", gauge.getKey(), format(gauge.getValue()));
+            }
+        }
+
+        if (reset) {
+            metricsService.reset();
+        }
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    private static String format(Number value) {
+        return value instanceof Double ? String.format("%.2f", value) : value.toString();
+    }
+}
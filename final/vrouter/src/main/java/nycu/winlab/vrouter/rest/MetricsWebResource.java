@@ -0,0 +1,86 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter.rest;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import nycu.winlab.vrouter.LatencyHistogram;
+import nycu.winlab.vrouter.ProcessingMetricsService;
+import nycu.winlab.vrouter.ProcessingStage;
+import org.onosproject.rest.AbstractWebResource;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Map;
+
+/**
+ * Latency and throughput of the vrouter processing stages.
+ */
+@Path("metrics")
+public class MetricsWebResource extends AbstractWebResource {
+
+    /**
+     * Gets the metrics of every processing stage and the current gauges.
+     * Latencies are in nanoseconds, rates in executions per second.
+     *
+     * @return 200 OK with the metrics
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getMetrics() {
+        ProcessingMetricsService metricsService = get(ProcessingMetricsService.class);
+
+        ObjectNode root = mapper().createObjectNode();
+        root.put("since", metricsService.since());
+        ObjectNode stages = root.putObject("stages");
+        for (ProcessingStage stage : ProcessingStage.values()) {
+            LatencyHistogram histogram = metricsService.histogram(stage);
+            stages.putObject(stage.name().toLowerCase())
+                    .put("count", histogram.count())
+                    .put("rate", metricsService.rate(stage))
+                    .put("mean", histogram.meanNanos())
+                    .put("p50", histogram.percentileNanos(50))
+                    .put("p90", histogram.percentileNanos(90))
+                    .put("p99", histogram.percentileNanos(99))
+                    .put("p999", histogram.percentileNanos(99.9))
+                    .put("max", histogram.maxNanos());
+        }
+        ObjectNode gauges = root.putObject("gauges");
+        for (Map.Entry<String, Number> gauge : metricsService.gauges().entrySet()) {
+            Number value = gauge.getValue();
+            if (value instanceof Double) {
+                gauges.put(gauge.getKey(), value.doubleValue());
+            } else {
+                gauges.put(gauge.getKey(), value.longValue());
+            }
+        }
+        return ok(root).build();
+    }
+
+    /**
+     * Resets the metrics and starts a new measurement period.
+     *
+     * @return 204 No Content
+     */
+    @DELETE
+    public Response resetMetrics() {
+        get(ProcessingMetricsService.class).reset();
+        return Response.noContent().build();
+    }
+}
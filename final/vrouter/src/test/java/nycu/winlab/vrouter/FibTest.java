@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.IpPrefix;
+
+/**
+ * Tests of the local forwarding information base.
+ */
+public class FibTest {
+
+    private Fib<String> fib;
+
+    @Before
+    public void setUp() {
+        fib = new Fib<>();
+    }
+
+    @Test
+    public void longestPrefixMatch4() {
+        fib.put(IpPrefix.valueOf("0.0.0.0/0"), "default");
+        fib.put(IpPrefix.valueOf("192.168.0.0/16"), "b");
+        fib.put(IpPrefix.valueOf("192.168.70.0/24"), "c");
+        fib.put(IpPrefix.valueOf("192.168.70.253/32"), "host");
+
+        assertEquals("host", fib.lookup(IpAddress.valueOf("192.168.70.253")));
+        assertEquals("c", fib.lookup(IpAddress.valueOf("192.168.70.1")));
+        assertEquals("b", fib.lookup(IpAddress.valueOf("192.168.63.2")));
+        assertEquals("default", fib.lookup(IpAddress.valueOf("10.0.0.1")));
+        assertEquals(4, fib.size());
+    }
+
+    @Test
+    public void longestPrefixMatch6() {
+        fib.put(IpPrefix.valueOf("fd70::/64"), "ta");
+        fib.put(IpPrefix.valueOf("fd63::/64"), "peer");
+        fib.put(IpPrefix.valueOf("2a0b:4e07:c4::/48"), "as");
+
+        assertEquals("ta", fib.lookup(IpAddress.valueOf("fd70::fe")));
+        assertEquals("peer", fib.lookup(IpAddress.valueOf("fd63::2")));
+        assertEquals("as", fib.lookup(IpAddress.valueOf("2a0b:4e07:c4:56::1")));
+        assertNull(fib.lookup(IpAddress.valueOf("fd71::1")));
+    }
+
+    @Test
+    public void removeFallsBackToShorterPrefix() {
+        fib.put(IpPrefix.valueOf("172.16.0.0/12"), "wide");
+        fib.put(IpPrefix.valueOf("172.16.56.0/24"), "narrow");
+        fib.put(IpPrefix.valueOf("172.16.57.0/24"), "sibling");
+
+        fib.remove(IpPrefix.valueOf("172.16.56.0/24"));
+        assertEquals("wide", fib.lookup(IpAddress.valueOf("172.16.56.1")));
+        assertEquals("sibling", fib.lookup(IpAddress.valueOf("172.16.57.1")));
+        assertEquals(2, fib.size());
+
+        fib.remove(IpPrefix.valueOf("172.16.0.0/12"));
+        assertNull(fib.lookup(IpAddress.valueOf("172.16.56.1")));
+        assertEquals(1, fib.size());
+    }
+
+    @Test
+    public void updateReplacesValue() {
+        fib.put(IpPrefix.valueOf("192.168.64.0/24"), "old");
+        fib.put(IpPrefix.valueOf("192.168.64.0/24"), "new");
+
+        assertEquals("new", fib.lookup(IpAddress.valueOf("192.168.64.2")));
+        assertEquals(1, fib.size());
+    }
+}
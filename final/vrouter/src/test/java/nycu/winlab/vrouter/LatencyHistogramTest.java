@@ -0,0 +1,64 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of the log-linear latency histogram.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentileNanos(99));
+    }
+
+    @Test
+    public void percentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.count());
+        assertEquals(500_500, histogram.meanNanos());
+        assertEquals(1_000_000, histogram.maxNanos());
+        assertWithin(500_000, histogram.percentileNanos(50));
+        assertWithin(990_000, histogram.percentileNanos(99));
+        assertEquals(1_000_000, histogram.percentileNanos(100));
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.maxNanos());
+        assertEquals(0, histogram.percentileNanos(50));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " not within 4% of " + expected,
+                actual >= expected && actual <= expected * 1.04);
+    }
+}
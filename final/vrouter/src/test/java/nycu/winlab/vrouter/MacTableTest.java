@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nycu.winlab.vrouter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+/**
+ * Tests of the intra-domain MAC learning table.
+ */
+public class MacTableTest {
+
+    private static final DeviceId DEV = DeviceId.deviceId("of:0000000000000001");
+    private static final MacAddress MAC = MacAddress.valueOf("00:00:00:00:00:01");
+
+    private long now;
+    private MacTable table;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        table = new MacTable(() -> now);
+        table.configure(4, 1000);
+    }
+
+    @Test
+    public void learnAndLookup() {
+        assertNull(table.learn(DEV, MAC, PortNumber.portNumber(1)));
+        assertEquals(PortNumber.portNumber(1), table.lookup(DEV, MAC));
+        assertNull(table.lookup(DeviceId.deviceId("of:0000000000000002"), MAC));
+    }
+
+    @Test
+    public void idleEntriesExpire() {
+        table.learn(DEV, MAC, PortNumber.portNumber(1));
+        now += 1001;
+        assertNull(table.lookup(DEV, MAC));
+    }
+
+    @Test
+    public void moveReportsPreviousPort() {
+        table.learn(DEV, MAC, PortNumber.portNumber(1));
+        assertEquals(PortNumber.portNumber(1), table.learn(DEV, MAC, PortNumber.portNumber(2)));
+        assertEquals(PortNumber.portNumber(2), table.lookup(DEV, MAC));
+    }
+
+    @Test
+    public void fullTableEvictsLeastRecentlySeen() {
+        for (int i = 1; i <= 4; i++) {
+            table.learn(DEV, MacAddress.valueOf(i), PortNumber.portNumber(i));
+            now += 10;
+        }
+        table.learn(DEV, MacAddress.valueOf(5), PortNumber.portNumber(5));
+
+        assertEquals(4, table.size(DEV));
+        assertNull(table.lookup(DEV, MacAddress.valueOf(1)));
+        assertEquals(PortNumber.portNumber(5), table.lookup(DEV, MacAddress.valueOf(5)));
+    }
+}